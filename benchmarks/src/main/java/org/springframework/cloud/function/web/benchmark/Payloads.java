@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * Test data shared by the benchmarks: lists of elements of a few representative types,
+ * selected by name so they can be used as a JMH parameter.
+ *
+ * @author Dave Syer
+ *
+ */
+public abstract class Payloads {
+
+	public static final String STRING = "string";
+
+	public static final String FOO = "foo";
+
+	public static final String MAP = "map";
+
+	public static List<Object> elements(String type, int size) {
+		List<Object> elements = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			elements.add(element(type, i));
+		}
+		return elements;
+	}
+
+	public static Object element(String type, int index) {
+		switch (type) {
+		case STRING:
+			return "value" + index;
+		case FOO:
+			return new Foo("value" + index);
+		case MAP:
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("value", "value" + index);
+			map.put("index", index);
+			return map;
+		default:
+			throw new IllegalArgumentException("Unknown payload type: " + type);
+		}
+	}
+
+	public static JavaType javaType(String type) {
+		TypeFactory factory = TypeFactory.defaultInstance();
+		switch (type) {
+		case STRING:
+			return factory.constructType(String.class);
+		case FOO:
+			return factory.constructType(Foo.class);
+		case MAP:
+			return factory.constructMapType(HashMap.class, String.class, Object.class);
+		default:
+			throw new IllegalArgumentException("Unknown payload type: " + type);
+		}
+	}
+
+	public static class Foo {
+
+		private String value;
+
+		public Foo(String value) {
+			this.value = value;
+		}
+
+		Foo() {
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public void setValue(String value) {
+			this.value = value;
+		}
+
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+import org.springframework.web.servlet.HandlerExecutionChain;
+
+/**
+ * Request dispatch by {@link FunctionHandlerMapping} with a varying number of registered
+ * functions, for a fixed path and for the <code>/{function}/{input}</code> pattern.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FunctionHandlerMappingBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int functions;
+
+	@Param({ "exact", "pattern" })
+	public String path;
+
+	private GenericWebApplicationContext context;
+
+	private FunctionHandlerMapping mapping;
+
+	private MockHttpServletRequest request;
+
+	@Setup
+	public void setup() {
+		this.context = new GenericWebApplicationContext(new MockServletContext());
+		this.context.getBeanFactory().registerSingleton("conversionService",
+				new DefaultConversionService());
+		for (int i = 0; i < this.functions; i++) {
+			int index = i;
+			Function<String, String> function = value -> value + index;
+			this.context.getBeanFactory().registerSingleton("function" + i, function);
+		}
+		this.context.refresh();
+		this.mapping = new FunctionHandlerMapping(this.context);
+		this.mapping.setApplicationContext(this.context);
+		this.mapping.afterPropertiesSet();
+		String name = "/function" + this.functions / 2;
+		this.request = "exact".equals(this.path)
+				? new MockHttpServletRequest("POST", name)
+				: new MockHttpServletRequest("GET", name + "/foo");
+	}
+
+	@TearDown
+	public void close() {
+		this.context.close();
+	}
+
+	@Benchmark
+	public HandlerExecutionChain lookup() throws Exception {
+		return this.mapping.getHandler(this.request);
+	}
+
+}
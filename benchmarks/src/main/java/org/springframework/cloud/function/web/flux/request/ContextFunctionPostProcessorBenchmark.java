@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.cloud.function.web.benchmark.Payloads;
+import org.springframework.cloud.function.web.benchmark.Payloads.Foo;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Per-request type and handler resolution in {@link ContextFunctionPostProcessor}, for
+ * functions declared as <code>@Bean</code> methods.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContextFunctionPostProcessorBenchmark {
+
+	@Param({ Payloads.STRING, Payloads.FOO, Payloads.MAP })
+	public String type;
+
+	private AnnotationConfigApplicationContext context;
+
+	private ContextFunctionPostProcessor processor;
+
+	@Setup
+	public void setup() {
+		this.context = new AnnotationConfigApplicationContext();
+		this.context.register(Functions.class);
+		this.context.registerBeanDefinition("contextFunctionPostProcessor",
+				new RootBeanDefinition(ContextFunctionPostProcessor.class));
+		this.context.refresh();
+		this.processor = this.context.getBean(ContextFunctionPostProcessor.class);
+	}
+
+	@TearDown
+	public void close() {
+		this.context.close();
+	}
+
+	@Benchmark
+	public Object metadata() {
+		return this.processor.metadata(this.type);
+	}
+
+	@Benchmark
+	public Class<?> inputType() {
+		return this.processor.findInputType(this.type);
+	}
+
+	@Benchmark
+	public Object handler() {
+		return this.processor.handler(this.type);
+	}
+
+	@Configuration
+	protected static class Functions {
+
+		@Bean(Payloads.STRING)
+		public Function<Flux<String>, Flux<String>> string() {
+			return flux -> flux.map(value -> value.toUpperCase());
+		}
+
+		@Bean(Payloads.FOO)
+		public Function<Foo, Foo> foo() {
+			return value -> new Foo(value.getValue().toUpperCase());
+		}
+
+		@Bean(Payloads.MAP)
+		public Function<Flux<Map<String, Object>>, Flux<Map<String, Object>>> map() {
+			return flux -> flux;
+		}
+
+	}
+
+}
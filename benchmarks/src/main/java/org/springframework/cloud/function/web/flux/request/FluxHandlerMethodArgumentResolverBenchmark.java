@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.function.web.benchmark.Payloads;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Decoding of function request bodies by {@link FluxHandlerMethodArgumentResolver},
+ * including consumption of the resulting flux.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FluxHandlerMethodArgumentResolverBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	@Param({ Payloads.STRING, Payloads.FOO, Payloads.MAP })
+	public String type;
+
+	@Param({ "false", "true" })
+	public boolean streaming;
+
+	private FluxHandlerMethodArgumentResolver resolver;
+
+	private DelegateHandler<?> handler;
+
+	private byte[] body;
+
+	@Setup
+	public void setup() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		this.resolver = new FluxHandlerMethodArgumentResolver(mapper);
+		this.resolver.setStreaming(this.streaming);
+		this.body = mapper.writeValueAsBytes(Payloads.elements(this.type, this.size));
+		JavaType javaType = Payloads.javaType(this.type);
+		this.handler = new BenchmarkHandler(new FunctionMetadata(this.type,
+				new String[] { this.type }, javaType.getRawClass(),
+				javaType.getRawClass(), javaType, javaType, true));
+	}
+
+	@Benchmark
+	public void decode(Blackhole blackhole) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST",
+				"/" + this.type);
+		request.setContentType("application/json");
+		request.setContent(this.body);
+		request.setAttribute(FluxHandlerMethodArgumentResolver.HANDLER, this.handler);
+		FluxRequest<?> input = (FluxRequest<?>) this.resolver.resolveArgument(null,
+				null, new ServletWebRequest(request), null);
+		input.flux().subscribe(blackhole::consume);
+	}
+
+	static class BenchmarkHandler extends DelegateHandler<Object> {
+
+		private final FunctionMetadata metadata;
+
+		BenchmarkHandler(FunctionMetadata metadata) {
+			super(beanFactory(), metadata.getName());
+			this.metadata = metadata;
+		}
+
+		@Override
+		public FunctionMetadata metadata() {
+			return this.metadata;
+		}
+
+		private static ListableBeanFactory beanFactory() {
+			StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+			beanFactory.addBean("conversionService", new DefaultConversionService());
+			return beanFactory;
+		}
+
+	}
+
+}
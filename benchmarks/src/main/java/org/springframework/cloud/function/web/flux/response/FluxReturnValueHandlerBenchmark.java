@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.boot.autoconfigure.web.HttpMessageConverters;
+import org.springframework.cloud.function.web.benchmark.Payloads;
+import org.springframework.core.MethodParameter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Encoding of function responses by {@link FluxReturnValueHandler} and the
+ * {@link ResponseBodyEmitterSubscriber}, for each of the supported response formats.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FluxReturnValueHandlerBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	@Param({ Payloads.STRING, Payloads.FOO, Payloads.MAP })
+	public String type;
+
+	@Param({ "application/json", "application/x-ndjson", "text/event-stream",
+			"text/plain" })
+	public String accept;
+
+	private FluxReturnValueHandler handler;
+
+	private List<Object> elements;
+
+	private MethodParameter returnType;
+
+	@Setup
+	public void setup() throws Exception {
+		this.handler = new FluxReturnValueHandler(
+				new HttpMessageConverters().getConverters());
+		this.elements = Payloads.elements(this.type, this.size);
+		this.returnType = new MethodParameter(
+				FluxReturnValueHandlerBenchmark.class.getDeclaredMethod("flux"), -1);
+	}
+
+	@TearDown
+	public void close() throws Exception {
+		this.handler.destroy();
+	}
+
+	@Benchmark
+	public int encode() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET",
+				"/" + this.type);
+		request.setAsyncSupported(true);
+		request.addHeader("Accept", this.accept);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		WebAsyncUtils.getAsyncManager(request).setAsyncWebRequest(
+				WebAsyncUtils.createAsyncWebRequest(request, response));
+		this.handler.handleReturnValue(flux(), this.returnType,
+				new ModelAndViewContainer(), new ServletWebRequest(request, response));
+		return response.getContentAsByteArray().length;
+	}
+
+	Flux<Object> flux() {
+		return Flux.fromIterable(this.elements);
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.cloud.function.web.flux.ConcurrencyLimits.Limiter;
+import org.springframework.cloud.function.web.flux.request.DelegateHandler;
+import org.springframework.cloud.function.web.flux.request.FluxHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Admission control for function requests. A request that would take a function over
+ * its concurrency limit is rejected with a 503 before its body is read, so an
+ * overloaded function fails fast instead of queueing up container threads. Admitted
+ * requests hold their permit until the response is complete (including any async
+ * part, however it ends: the container tells us if the client goes away or the
+ * request times out or fails, even if the handler never hears of it).
+ *
+ * @author Dave Syer
+ *
+ */
+class ConcurrencyLimitInterceptor extends HandlerInterceptorAdapter {
+
+	private static final String PERMIT = ConcurrencyLimitInterceptor.class.getName()
+			+ ".PERMIT";
+
+	private final ConcurrencyLimits limits;
+
+	public ConcurrencyLimitInterceptor(ConcurrencyLimits limits) {
+		this.limits = limits;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
+			Object handler) throws Exception {
+		if (request.getDispatcherType() == DispatcherType.ASYNC) {
+			// Already admitted
+			return true;
+		}
+		Object delegate = request.getAttribute(FluxHandlerMethodArgumentResolver.HANDLER);
+		if (!(delegate instanceof DelegateHandler)) {
+			return true;
+		}
+		Limiter limiter = this.limits.limiter(((DelegateHandler<?>) delegate).getName());
+		if (limiter == null) {
+			return true;
+		}
+		if (!limiter.acquire()) {
+			response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+			response.setHeader(HttpHeaders.RETRY_AFTER,
+					String.valueOf(limiter.getRetryAfter()));
+			return false;
+		}
+		request.setAttribute(PERMIT, new Permit(limiter));
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request,
+			HttpServletResponse response, Object handler) throws Exception {
+		Object permit = request.getAttribute(PERMIT);
+		if (permit instanceof Permit) {
+			request.getAsyncContext().addListener((Permit) permit);
+		}
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+			Object handler, Exception ex) throws Exception {
+		if (request.isAsyncStarted()) {
+			// The response is not finished until the async part completes
+			return;
+		}
+		Object permit = request.getAttribute(PERMIT);
+		if (permit instanceof Permit) {
+			request.removeAttribute(PERMIT);
+			((Permit) permit).release();
+		}
+	}
+
+	/**
+	 * A permit that is released once, whichever of the synchronous and async paths gets
+	 * there first.
+	 */
+	private static class Permit implements AsyncListener {
+
+		private final Limiter limiter;
+
+		private final long start = System.nanoTime();
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		public Permit(Limiter limiter) {
+			this.limiter = limiter;
+		}
+
+		public void release() {
+			if (this.released.compareAndSet(false, true)) {
+				this.limiter.release(System.nanoTime() - this.start);
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			release();
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			release();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			// E.g. the client has gone away
+			release();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// Async was started again, so keep listening
+			event.getAsyncContext().addListener(this);
+		}
+
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive limits on the number of concurrent requests to each function, keyed by
+ * function (bean) name. The limit follows the observed latency, TCP Vegas style: while
+ * latency stays close to the best seen recently there is no queueing, so the limit
+ * grows; when latency rises requests are queueing somewhere, so it shrinks. A request
+ * that would exceed the limit is not admitted at all.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ConcurrencyLimits {
+
+	private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+	/**
+	 * Enable a limit for a function.
+	 *
+	 * @param name the function name
+	 * @param initial the initial limit
+	 * @param min the lowest the limit can go
+	 * @param max the highest the limit can go
+	 * @param retryAfter the number of seconds rejected clients should wait
+	 */
+	public void configure(String name, int initial, int min, int max, int retryAfter) {
+		this.limiters.put(name, new Limiter(initial, min, max, retryAfter));
+	}
+
+	/**
+	 * @param name the function name
+	 * @return the limiter for the function, or null if it is not limited
+	 */
+	public Limiter limiter(String name) {
+		return this.limiters.get(name);
+	}
+
+	public static class Limiter {
+
+		/**
+		 * Number of samples after which the best latency is forgotten, so the limit can
+		 * recover if the function gets permanently slower (or faster).
+		 */
+		private static final int PROBE_INTERVAL = 1000;
+
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		private final int min;
+
+		private final int max;
+
+		private final int retryAfter;
+
+		private volatile int limit;
+
+		private long minRtt = Long.MAX_VALUE;
+
+		private int samples;
+
+		Limiter(int initial, int min, int max, int retryAfter) {
+			this.limit = initial;
+			this.min = min;
+			this.max = max;
+			this.retryAfter = retryAfter;
+		}
+
+		public int getLimit() {
+			return this.limit;
+		}
+
+		public int getInFlight() {
+			return this.inFlight.get();
+		}
+
+		public int getRetryAfter() {
+			return this.retryAfter;
+		}
+
+		/**
+		 * @return true if a request was admitted, in which case {@link #release(long)}
+		 * must be called when it completes
+		 */
+		public boolean acquire() {
+			while (true) {
+				int current = this.inFlight.get();
+				if (current >= this.limit) {
+					return false;
+				}
+				if (this.inFlight.compareAndSet(current, current + 1)) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * @param rtt the time it took to handle the request, in nanoseconds
+		 */
+		public void release(long rtt) {
+			int inFlight = this.inFlight.getAndDecrement();
+			sample(rtt, inFlight);
+		}
+
+		private synchronized void sample(long rtt, int inFlight) {
+			if (++this.samples >= PROBE_INTERVAL) {
+				this.samples = 0;
+				this.minRtt = Long.MAX_VALUE;
+			}
+			if (rtt <= 0) {
+				return;
+			}
+			if (rtt < this.minRtt) {
+				this.minRtt = rtt;
+			}
+			int limit = this.limit;
+			// Estimated number of requests queueing instead of being served
+			double queue = limit * (1 - (double) this.minRtt / rtt);
+			double log = Math.max(1, Math.log10(limit));
+			if (queue > 6 * log) {
+				limit--;
+			}
+			else if (queue < 3 * log && inFlight * 2 >= limit) {
+				// Only grow when the limit is actually being used
+				limit++;
+			}
+			this.limit = Math.max(this.min, Math.min(this.max, limit));
+		}
+
+	}
+
+}
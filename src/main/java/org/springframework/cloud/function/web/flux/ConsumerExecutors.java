@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Bounded executors for running consumers off the servlet thread, one per consumer
+ * (bean) name so that a slow consumer cannot starve the others. Each executor has a
+ * fixed number of threads and a bounded queue, and what happens when the queue is
+ * full is decided by the {@link Rejection} policy.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ConsumerExecutors implements DisposableBean {
+
+	private final ConcurrentMap<String, ThreadPoolExecutor> executors //
+			= new ConcurrentHashMap<>();
+
+	private final int poolSize;
+
+	private final int queueCapacity;
+
+	private final Rejection rejection;
+
+	public ConsumerExecutors(int poolSize, int queueCapacity, Rejection rejection) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1");
+		}
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be at least 1");
+		}
+		this.poolSize = poolSize;
+		this.queueCapacity = queueCapacity;
+		this.rejection = rejection;
+	}
+
+	/**
+	 * Run a task on the executor for the named consumer.
+	 *
+	 * @param name the consumer name
+	 * @param task the task to run
+	 * @return true if the task was accepted (queued or, with
+	 * {@link Rejection#CALLER_RUNS}, already run), false if it was rejected
+	 */
+	public boolean execute(String name, Runnable task) {
+		try {
+			executor(name).execute(task);
+			return true;
+		}
+		catch (RejectedExecutionException e) {
+			if (this.rejection == Rejection.CALLER_RUNS) {
+				task.run();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Check whether a task for the named consumer would be accepted right now, so that
+	 * a request can be refused before its body is read. The answer can be out of date
+	 * by the time {@link #execute(String, Runnable)} is called, which still has the
+	 * last word.
+	 *
+	 * @param name the consumer name
+	 * @return true if there is an idle thread or room in the queue, or if the caller
+	 * would run the task anyway
+	 */
+	public boolean hasCapacity(String name) {
+		if (this.rejection == Rejection.CALLER_RUNS) {
+			return true;
+		}
+		ThreadPoolExecutor executor = this.executors.get(name);
+		return executor == null || executor.getActiveCount() < this.poolSize
+				|| executor.getQueue().remainingCapacity() > 0;
+	}
+
+	/**
+	 * @param name the consumer name
+	 * @return the number of tasks waiting for a thread on the consumer's executor
+	 */
+	public int getQueueSize(String name) {
+		ThreadPoolExecutor executor = this.executors.get(name);
+		return executor == null ? 0 : executor.getQueue().size();
+	}
+
+	private ThreadPoolExecutor executor(String name) {
+		ThreadPoolExecutor executor = this.executors.get(name);
+		if (executor == null) {
+			executor = this.executors.computeIfAbsent(name, this::create);
+		}
+		return executor;
+	}
+
+	private ThreadPoolExecutor create(String name) {
+		CustomizableThreadFactory threads = new CustomizableThreadFactory(
+				"function-" + name + "-");
+		threads.setDaemon(true);
+		return new ThreadPoolExecutor(this.poolSize, this.poolSize, 60L,
+				TimeUnit.SECONDS, new ArrayBlockingQueue<>(this.queueCapacity), threads,
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		for (ThreadPoolExecutor executor : this.executors.values()) {
+			executor.shutdown();
+		}
+		this.executors.clear();
+	}
+
+	/**
+	 * What to do with a request when the queue of a consumer is full.
+	 */
+	public enum Rejection {
+
+		/**
+		 * Refuse the request with a 503 (Service Unavailable) response.
+		 */
+		REJECT,
+
+		/**
+		 * Run the consumer on the servlet thread, which slows down the client.
+		 */
+		CALLER_RUNS;
+
+	}
+
+}
@@ -18,7 +18,13 @@ package org.springframework.cloud.function.web.flux;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -32,20 +38,25 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.cloud.function.web.flux.request.DelegateHandler;
 import org.springframework.cloud.function.web.flux.request.FluxHandlerMethodArgumentResolver;
 import org.springframework.cloud.function.web.flux.request.FluxRequest;
+import org.springframework.cloud.function.web.flux.request.FunctionMetadata;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.ClassUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 /**
  * @author Dave Syer
@@ -58,6 +69,20 @@ public class FunctionHandlerMapping extends RequestMappingHandlerMapping {
 	@Value("${spring.cloud.function.web.path:}")
 	private String prefix = "";
 	private ListableBeanFactory beanFactory;
+	/**
+	 * Routes for function paths without any pattern in them, keyed by HTTP method and
+	 * then by path. Tried before the generic pattern matching in the superclass.
+	 */
+	private final Map<String, Map<String, ExactRoute>> routes = new HashMap<>();
+	private ConsumerExecutors consumerExecutors;
+	private FunctionSchedulers functionSchedulers;
+	private ParallelRails parallelRails;
+	private MicroBatcher microBatcher;
+	private ResultCaches resultCaches;
+	private SingleFlight singleFlight;
+	private SharedSuppliers sharedSuppliers;
+	private ConcurrencyLimits concurrencyLimits;
+	private RateLimits rateLimits;
 
 	@Autowired
 	public FunctionHandlerMapping(ListableBeanFactory beanFactory) {
@@ -65,6 +90,103 @@ public class FunctionHandlerMapping extends RequestMappingHandlerMapping {
 		setOrder(super.getOrder() - 5);
 	}
 
+	/**
+	 * Executors for running consumers asynchronously. If set, consumer endpoints hand
+	 * the request off and respond straight away with a count of the items accepted,
+	 * instead of running the consumer and echoing the items back.
+	 *
+	 * @param consumerExecutors the executors to set
+	 */
+	public void setConsumerExecutors(ConsumerExecutors consumerExecutors) {
+		this.consumerExecutors = consumerExecutors;
+	}
+
+	/**
+	 * Schedulers for functions and suppliers that should not run on the servlet
+	 * container threads.
+	 *
+	 * @param functionSchedulers the schedulers to set
+	 */
+	public void setFunctionSchedulers(FunctionSchedulers functionSchedulers) {
+		this.functionSchedulers = functionSchedulers;
+	}
+
+	/**
+	 * Parallel execution options for plain functions.
+	 *
+	 * @param parallelRails the options to set
+	 */
+	public void setParallelRails(ParallelRails parallelRails) {
+		this.parallelRails = parallelRails;
+	}
+
+	/**
+	 * Batching options for single valued function invocations.
+	 *
+	 * @param microBatcher the batcher to set
+	 */
+	public void setMicroBatcher(MicroBatcher microBatcher) {
+		this.microBatcher = microBatcher;
+	}
+
+	/**
+	 * Caches for the results of single valued function invocations.
+	 *
+	 * @param resultCaches the caches to set
+	 */
+	public void setResultCaches(ResultCaches resultCaches) {
+		this.resultCaches = resultCaches;
+	}
+
+	/**
+	 * Coalescing of concurrent single valued function invocations with equal inputs.
+	 *
+	 * @param singleFlight the single flight registry to set
+	 */
+	public void setSingleFlight(SingleFlight singleFlight) {
+		this.singleFlight = singleFlight;
+	}
+
+	/**
+	 * Shared upstream subscriptions for suppliers.
+	 *
+	 * @param sharedSuppliers the shared suppliers to set
+	 */
+	public void setSharedSuppliers(SharedSuppliers sharedSuppliers) {
+		this.sharedSuppliers = sharedSuppliers;
+	}
+
+	/**
+	 * Adaptive concurrency limits for functions. Requests over the limit are rejected
+	 * before their body is read.
+	 *
+	 * @param concurrencyLimits the limits to set
+	 */
+	public void setConcurrencyLimits(ConcurrencyLimits concurrencyLimits) {
+		this.concurrencyLimits = concurrencyLimits;
+	}
+
+	/**
+	 * Per client rate limits for functions. Requests over the limit are rejected before
+	 * their body is read.
+	 *
+	 * @param rateLimits the limits to set
+	 */
+	public void setRateLimits(RateLimits rateLimits) {
+		this.rateLimits = rateLimits;
+	}
+
+	@Override
+	protected void extendInterceptors(List<Object> interceptors) {
+		if (rateLimits != null) {
+			// Before the concurrency limit so throttled requests never take a permit
+			interceptors.add(new RateLimitInterceptor(rateLimits));
+		}
+		if (concurrencyLimits != null) {
+			interceptors.add(new ConcurrencyLimitInterceptor(concurrencyLimits));
+		}
+	}
+
 	@Override
 	public void afterPropertiesSet() {
 		super.afterPropertiesSet();
@@ -88,13 +210,15 @@ public class FunctionHandlerMapping extends RequestMappingHandlerMapping {
 			return handler;
 		}
 		if (Function.class.isAssignableFrom(type)) {
-			return new FunctionDelegate(beanFactory, handler);
+			return new FunctionDelegate(beanFactory, handler, functionSchedulers,
+					parallelRails, microBatcher, resultCaches, singleFlight);
 		}
 		if (Consumer.class.isAssignableFrom(type)) {
-			return new ConsumerDelegate(beanFactory, handler);
+			return new ConsumerDelegate(beanFactory, handler, consumerExecutors);
 		}
 		if (Supplier.class.isAssignableFrom(type)) {
-			return new SupplierDelegate(beanFactory, handler);
+			return new SupplierDelegate(beanFactory, handler, functionSchedulers,
+					sharedSuppliers);
 		}
 		return handler;
 	}
@@ -122,12 +246,26 @@ public class FunctionHandlerMapping extends RequestMappingHandlerMapping {
 		mapping = mapping
 				.combine(RequestMappingInfo.paths(paths.toArray(new String[0])).build());
 		super.registerHandlerMethod(handler, method, mapping);
+		HandlerMethod handlerMethod = getHandlerMethods().get(mapping);
+		for (RequestMethod requestMethod : mapping.getMethodsCondition().getMethods()) {
+			for (String path : paths) {
+				if (!getPathMatcher().isPattern(path)) {
+					Map<String, ExactRoute> byPath = routes.computeIfAbsent(
+							requestMethod.name(), key -> new HashMap<>());
+					byPath.put(path, new ExactRoute(RequestMappingInfo.paths(path)
+							.methods(requestMethod).build(), handlerMethod));
+				}
+			}
+		}
 	}
 
 	@Override
 	protected HandlerMethod lookupHandlerMethod(String lookupPath,
 			HttpServletRequest request) throws Exception {
-		HandlerMethod method = super.lookupHandlerMethod(lookupPath, request);
+		HandlerMethod method = lookupExactRoute(lookupPath, request);
+		if (method == null) {
+			method = super.lookupHandlerMethod(lookupPath, request);
+		}
 		if (method == null) {
 			return null;
 		}
@@ -135,52 +273,270 @@ public class FunctionHandlerMapping extends RequestMappingHandlerMapping {
 		return method;
 	}
 
+	private HandlerMethod lookupExactRoute(String lookupPath,
+			HttpServletRequest request) {
+		String requestMethod = request.getMethod();
+		if ("HEAD".equals(requestMethod)) {
+			requestMethod = "GET";
+		}
+		Map<String, ExactRoute> byPath = routes.get(requestMethod);
+		if (byPath == null) {
+			return null;
+		}
+		ExactRoute route = byPath.get(lookupPath);
+		if (route == null) {
+			return null;
+		}
+		handleMatch(route.mapping, lookupPath, request);
+		return route.handlerMethod;
+	}
+
+	private static Scheduler scheduler(FunctionSchedulers schedulers, String name) {
+		return schedulers == null ? null : schedulers.scheduler(name);
+	}
+
+	/**
+	 * Refuse a request for a function whose scheduler is saturated while a 503 can still
+	 * be sent (once the result is returned the response is committed).
+	 */
+	private static void admit(FunctionSchedulers schedulers, String name) {
+		if (scheduler(schedulers, name) != null && !schedulers.hasCapacity(name)) {
+			throw new FunctionSchedulers.SchedulerFullException(name);
+		}
+	}
+
+	private static class ExactRoute {
+
+		private final RequestMappingInfo mapping;
+
+		private final HandlerMethod handlerMethod;
+
+		public ExactRoute(RequestMappingInfo mapping, HandlerMethod handlerMethod) {
+			this.mapping = mapping;
+			this.handlerMethod = handlerMethod;
+		}
+
+	}
+
 	public static class SupplierDelegate extends DelegateHandler<Supplier<Flux<Object>>> {
+
+		private final FunctionSchedulers schedulers;
+
+		private final SharedSuppliers shared;
+
 		public SupplierDelegate(ListableBeanFactory factory, Object source) {
+			this(factory, source, null, null);
+		}
+
+		public SupplierDelegate(ListableBeanFactory factory, Object source,
+				FunctionSchedulers schedulers, SharedSuppliers shared) {
 			super(factory, source);
+			this.schedulers = schedulers;
+			this.shared = shared;
 		}
 
 		@GetMapping
 		@ResponseBody
 		public Flux<Object> get() {
-			return handler().get();
+			if (shared != null && shared.isShared(getName())) {
+				return shared.get(getName(), this::supply);
+			}
+			admit(schedulers, getName());
+			return supply();
+		}
+
+		private Flux<Object> supply() {
+			Scheduler scheduler = scheduler(schedulers, getName());
+			Flux<Object> result = handler().get();
+			return scheduler == null ? result : result.subscribeOn(scheduler);
 		}
 	}
 
 	public static class FunctionDelegate
 			extends DelegateHandler<Function<Flux<Object>, Flux<Object>>> {
 
+		private final FunctionSchedulers schedulers;
+
+		private final ParallelRails rails;
+
+		private final MicroBatcher batcher;
+
+		private final ResultCaches caches;
+
+		private final SingleFlight flights;
+
 		public FunctionDelegate(ListableBeanFactory factory, Object source) {
+			this(factory, source, null, null, null, null, null);
+		}
+
+		public FunctionDelegate(ListableBeanFactory factory, Object source,
+				FunctionSchedulers schedulers, ParallelRails rails, MicroBatcher batcher,
+				ResultCaches caches, SingleFlight flights) {
 			super(factory, source);
+			this.schedulers = schedulers;
+			this.rails = rails;
+			this.batcher = batcher;
+			this.caches = caches;
+			this.flights = flights;
 		}
 
 		@PostMapping
 		@ResponseBody
 		public Flux<Object> apply(@RequestBody FluxRequest<Object> input) {
-			return handler().apply(input.flux());
+			admit(schedulers, getName());
+			Scheduler scheduler = scheduler(schedulers, getName());
+			if (isParallel()) {
+				Function<Object, Object> function = target();
+				return rails.apply(getName(), function, input.flux(), scheduler);
+			}
+			Flux<Object> result = handler().apply(input.flux());
+			return scheduler == null ? result : result.subscribeOn(scheduler);
+		}
+
+		private boolean isParallel() {
+			if (rails == null || !rails.isParallel(getName())) {
+				return false;
+			}
+			// Only plain functions can be split: a Flux function sees the whole stream
+			FunctionMetadata metadata = metadata();
+			return metadata != null && !metadata.isFlux();
 		}
 
 		@GetMapping
 		@ResponseBody
 		public Mono<Object> single(@PathVariable String input) {
 			Object converted = convert(input);
-			return Mono.from(handler().apply(Flux.just(converted)));
+			ResultCache cache = caches == null ? null : caches.cache(getName());
+			if (cache != null) {
+				Object cached = cache.get(converted);
+				if (cached != null) {
+					return Mono.just(cached);
+				}
+				admit(schedulers, getName());
+				return coalesce(converted)
+						.doOnNext(value -> cache.put(converted, value));
+			}
+			admit(schedulers, getName());
+			return coalesce(converted);
+		}
+
+		private Mono<Object> coalesce(Object converted) {
+			if (flights != null && flights.isCoalesced(getName())) {
+				return flights.execute(getName(), converted, () -> compute(converted));
+			}
+			return compute(converted);
+		}
+
+		private Mono<Object> compute(Object converted) {
+			Scheduler scheduler = scheduler(schedulers, getName());
+			if (batcher != null && batcher.isBatched(getName())) {
+				return batcher.submit(getName(), converted, handler(), scheduler);
+			}
+			Mono<Object> result = Mono.from(handler().apply(Flux.just(converted)));
+			return scheduler == null ? result : result.subscribeOn(scheduler);
 		}
 
 	}
 
 	public static class ConsumerDelegate extends DelegateHandler<Consumer<Flux<Object>>> {
 
+		private final ConsumerExecutors executors;
+
 		public ConsumerDelegate(ListableBeanFactory factory, Object source) {
+			this(factory, source, null);
+		}
+
+		public ConsumerDelegate(ListableBeanFactory factory, Object source,
+				ConsumerExecutors executors) {
 			super(factory, source);
+			this.executors = executors;
 		}
 
 		@PostMapping
 		@ResponseBody
-		public ResponseEntity<List<Object>> accept(@RequestBody FluxRequest<Object> input) {
+		public ResponseEntity<Object> accept(@RequestBody FluxRequest<Object> input) {
+			if (executors != null) {
+				return enqueue(input);
+			}
+			List<Object> body = input.body();
+			if (body == null) {
+				return ResponseEntity.accepted().body(drain(input.flux()));
+			}
 			handler().accept(input.flux());
-			return ResponseEntity.accepted().body(input.body());
+			return ResponseEntity.accepted().body(body);
+		}
+
+		/**
+		 * Streamed request: the body can only be read until we respond, so wait for the
+		 * consumer to drain it (even if it subscribes on another thread) and then echo
+		 * back whatever it pulled.
+		 */
+		private List<Object> drain(Flux<Object> flux) {
+			List<Object> consumed = new ArrayList<>();
+			AtomicReference<Throwable> error = new AtomicReference<>();
+			CountDownLatch drained = new CountDownLatch(1);
+			handler().accept(flux.doOnNext(consumed::add).doOnError(e -> {
+				error.set(e);
+				drained.countDown();
+			}).doOnComplete(drained::countDown).doOnCancel(drained::countDown));
+			try {
+				drained.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted waiting for consumer", e);
+			}
+			if (error.get() != null) {
+				throw Exceptions.propagate(error.get());
+			}
+			return consumed;
 		}
+
+		private ResponseEntity<Object> enqueue(FluxRequest<Object> input) {
+			if (!executors.hasCapacity(getName())) {
+				// Refuse before reading a body that would only be thrown away
+				return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+			}
+			Consumer<Flux<Object>> consumer = handler();
+			List<Object> body = input.body();
+			if (body != null) {
+				if (!executors.execute(getName(),
+						() -> consumer.accept(Flux.fromIterable(body)))) {
+					return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+				}
+				return accepted(body.size());
+			}
+			// The request stream is closed once we respond, so wait until the consumer
+			// has read it (on its own thread, and at its own pace, so nothing is held
+			// here but the count)
+			AtomicLong count = new AtomicLong();
+			AtomicReference<Throwable> error = new AtomicReference<>();
+			CountDownLatch read = new CountDownLatch(1);
+			Flux<Object> flux = input.flux().doOnNext(item -> count.incrementAndGet())
+					.doOnError(e -> {
+						error.set(e);
+						read.countDown();
+					}).doOnComplete(read::countDown).doOnCancel(read::countDown);
+			if (!executors.execute(getName(), () -> consumer.accept(flux))) {
+				return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+			}
+			try {
+				read.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted waiting for consumer", e);
+			}
+			if (error.get() != null) {
+				throw Exceptions.propagate(error.get());
+			}
+			return accepted(count.get());
+		}
+
+		private ResponseEntity<Object> accepted(long count) {
+			return ResponseEntity.accepted().body(Collections.singletonMap("count", count));
+		}
+
 	}
 
 }
@@ -17,22 +17,34 @@
 package org.springframework.cloud.function.web.flux;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.autoconfigure.web.HttpMessageConverters;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.function.web.flux.metrics.FunctionMetrics;
+import org.springframework.cloud.function.web.flux.metrics.FunctionMetricsEndpoint;
 import org.springframework.cloud.function.web.flux.request.FluxHandlerMethodArgumentResolver;
+import org.springframework.cloud.function.web.flux.request.FunctionCodecs;
 import org.springframework.cloud.function.web.flux.response.FluxReturnValueHandler;
+import org.springframework.cloud.function.web.flux.response.OverflowPolicy;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.util.ClassUtils;
 import org.springframework.web.method.support.AsyncHandlerMethodReturnValueHandler;
 import org.springframework.web.method.support.HandlerMethodArgumentResolver;
@@ -48,30 +60,262 @@ import reactor.core.publisher.Flux;
 @Configuration
 @ConditionalOnWebApplication
 @ConditionalOnClass({ Flux.class, AsyncHandlerMethodReturnValueHandler.class })
+@EnableConfigurationProperties(FunctionWebProperties.class)
 public class FunctionReactorAutoConfiguration {
 
 	@Autowired
 	private ApplicationContext context;
 
 	@Bean
-	public FunctionHandlerMapping functionHandlerMapping() {
-		return new FunctionHandlerMapping(context);
+	public FunctionHandlerMapping functionHandlerMapping(
+			ObjectProvider<ConsumerExecutors> consumerExecutors,
+			FunctionSchedulers functionSchedulers, ParallelRails parallelRails,
+			MicroBatcher microBatcher, ResultCaches resultCaches,
+			SingleFlight singleFlight, SharedSuppliers sharedSuppliers,
+			ConcurrencyLimits concurrencyLimits, RateLimits rateLimits) {
+		FunctionHandlerMapping mapping = new FunctionHandlerMapping(context);
+		mapping.setConsumerExecutors(consumerExecutors.getIfAvailable());
+		mapping.setFunctionSchedulers(functionSchedulers);
+		mapping.setParallelRails(parallelRails);
+		mapping.setMicroBatcher(microBatcher);
+		mapping.setResultCaches(resultCaches);
+		mapping.setSingleFlight(singleFlight);
+		mapping.setSharedSuppliers(sharedSuppliers);
+		mapping.setConcurrencyLimits(concurrencyLimits);
+		mapping.setRateLimits(rateLimits);
+		return mapping;
+	}
+
+	@Bean
+	public RateLimits rateLimits(FunctionWebProperties properties) {
+		RateLimits limits = new RateLimits();
+		for (Map.Entry<String, FunctionWebProperties.Function> entry : properties
+				.getFunctions().entrySet()) {
+			FunctionWebProperties.Rate rate = entry.getValue().getRate();
+			if (rate.isEnabled()) {
+				limits.configure(entry.getKey(), rate.getLimit(), rate.getBurst(),
+						rate.getKeyHeader(), rate.getMaxClients());
+			}
+		}
+		return limits;
+	}
+
+	@Bean
+	public ConcurrencyLimits concurrencyLimits(FunctionWebProperties properties) {
+		ConcurrencyLimits limits = new ConcurrencyLimits();
+		for (Map.Entry<String, FunctionWebProperties.Function> entry : properties
+				.getFunctions().entrySet()) {
+			FunctionWebProperties.Limit limit = entry.getValue().getLimit();
+			if (limit.isEnabled()) {
+				limits.configure(entry.getKey(), limit.getInitial(), limit.getMin(),
+						limit.getMax(), limit.getRetryAfter());
+			}
+		}
+		return limits;
+	}
+
+	@Bean
+	public SharedSuppliers sharedSuppliers(FunctionWebProperties properties) {
+		SharedSuppliers shared = new SharedSuppliers();
+		for (Map.Entry<String, FunctionWebProperties.Function> entry : properties
+				.getFunctions().entrySet()) {
+			FunctionWebProperties.Shared options = entry.getValue().getShared();
+			if (options.isEnabled()) {
+				shared.configure(entry.getKey(), options.getReplay());
+			}
+		}
+		return shared;
+	}
+
+	@Bean
+	public SingleFlight singleFlight(FunctionWebProperties properties) {
+		SingleFlight flights = new SingleFlight();
+		for (Map.Entry<String, FunctionWebProperties.Function> entry : properties
+				.getFunctions().entrySet()) {
+			if (entry.getValue().isCoalesce()) {
+				flights.configure(entry.getKey());
+			}
+		}
+		return flights;
+	}
+
+	@Bean
+	public ResultCaches resultCaches(FunctionWebProperties properties) {
+		ResultCaches caches = new ResultCaches();
+		for (Map.Entry<String, FunctionWebProperties.Function> entry : properties
+				.getFunctions().entrySet()) {
+			FunctionWebProperties.Cache cache = entry.getValue().getCache();
+			if (cache.isEnabled()) {
+				caches.configure(entry.getKey(), cache.getMaxSize(), cache.getMaxWeight(),
+						cache.getTtl());
+			}
+		}
+		return caches;
+	}
+
+	@Bean
+	public MicroBatcher microBatcher(FunctionWebProperties properties) {
+		MicroBatcher batcher = new MicroBatcher();
+		for (Map.Entry<String, FunctionWebProperties.Function> entry : properties
+				.getFunctions().entrySet()) {
+			FunctionWebProperties.Batch batch = entry.getValue().getBatch();
+			if (batch.isEnabled()) {
+				batcher.configure(entry.getKey(), batch.getMaxSize(),
+						batch.getMaxWait());
+			}
+		}
+		return batcher;
+	}
+
+	@Bean
+	public ParallelRails parallelRails(FunctionWebProperties properties) {
+		ParallelRails rails = new ParallelRails();
+		for (Map.Entry<String, FunctionWebProperties.Function> entry : properties
+				.getFunctions().entrySet()) {
+			FunctionWebProperties.Parallel parallel = entry.getValue().getParallel();
+			if (parallel.isEnabled()) {
+				rails.configure(entry.getKey(), parallel.getParallelism(),
+						parallel.getPrefetch(), parallel.isOrdered());
+			}
+		}
+		return rails;
+	}
+
+	@Bean
+	public FunctionSchedulers functionSchedulers(FunctionWebProperties properties) {
+		FunctionSchedulers schedulers = new FunctionSchedulers();
+		for (Map.Entry<String, FunctionWebProperties.Function> entry : properties
+				.getFunctions().entrySet()) {
+			FunctionWebProperties.Execution execution = entry.getValue().getExecution();
+			if (execution.getType() != null) {
+				schedulers.configure(entry.getKey(), execution.getType(),
+						execution.getThreads(), execution.getQueueCapacity());
+			}
+		}
+		return schedulers;
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "spring.cloud.function.web.consumer", name = "async")
+	public ConsumerExecutors consumerExecutors(FunctionWebProperties properties) {
+		FunctionWebProperties.Consumer consumer = properties.getConsumer();
+		return new ConsumerExecutors(consumer.getPoolSize(), consumer.getQueueCapacity(),
+				consumer.getRejection());
 	}
 
 	@Bean
 	@ConditionalOnMissingClass("org.springframework.core.ReactiveAdapter")
 	public FluxReturnValueHandler fluxReturnValueHandler(
-			HttpMessageConverters converters) {
-		return new FluxReturnValueHandler(converters.getConverters());
+			HttpMessageConverters converters, FunctionWebProperties properties,
+			ObjectProvider<FunctionMetrics> metrics, FunctionCodecs codecs) {
+		FluxReturnValueHandler handler = new FluxReturnValueHandler(
+				converters.getConverters());
+		handler.setBatchSize(properties.getBatchSize());
+		handler.setTimeout(properties.getTimeout());
+		handler.setJsonFlushPolicy(properties.getFlush().getJson().toPolicy());
+		handler.setSseFlushPolicy(properties.getFlush().getSse().toPolicy());
+		handler.setNdjsonFlushPolicy(properties.getFlush().getNdjson().toPolicy());
+		handler.setPlainFlushPolicy(properties.getFlush().getPlain().toPolicy());
+		handler.setNonBlockingIo(properties.isNonBlockingIo());
+		handler.setCompression(properties.getCompression().isEnabled());
+		handler.setCompressionMinSize(properties.getCompression().getMinSize());
+		handler.setEscapeStrings(properties.isEscapeStrings());
+		handler.setMetrics(metrics.getIfAvailable());
+		handler.setCodecs(codecs);
+		Map<String, OverflowPolicy> overflow = new HashMap<>();
+		Map<String, Long> timeouts = new HashMap<>();
+		Map<String, Long> heartbeats = new HashMap<>();
+		for (Map.Entry<String, FunctionWebProperties.Function> entry : properties
+				.getFunctions().entrySet()) {
+			FunctionWebProperties.Function function = entry.getValue();
+			if (function.getBuffer().getSize() > 0) {
+				overflow.put(entry.getKey(), function.getBuffer().toPolicy());
+			}
+			if (function.getTimeout() != null) {
+				timeouts.put(entry.getKey(), function.getTimeout());
+			}
+			if (function.getHeartbeat() > 0) {
+				heartbeats.put(entry.getKey(), function.getHeartbeat());
+			}
+		}
+		handler.setOverflowPolicies(overflow);
+		handler.setTimeouts(timeouts);
+		handler.setHeartbeats(heartbeats);
+		return handler;
+	}
+
+	@Configuration
+	@ConditionalOnProperty(prefix = "spring.cloud.function.web.metrics", name = "enabled")
+	protected static class FunctionMetricsConfiguration {
+
+		@Bean
+		public FunctionMetrics functionMetrics() {
+			return new FunctionMetrics();
+		}
+
+		@Bean
+		public FunctionMetricsEndpoint functionMetricsEndpoint(FunctionMetrics metrics,
+				ResultCaches caches) {
+			FunctionMetricsEndpoint endpoint = new FunctionMetricsEndpoint(metrics);
+			endpoint.setCaches(caches);
+			return endpoint;
+		}
+
 	}
 
 	@Configuration
 	protected static class FluxMessageConverterConfiguration {
 
+		@Bean
+		public FunctionCodecs functionCodecs(ObjectMapper mapper) {
+			FunctionCodecs codecs = new FunctionCodecs(mapper);
+			if (ClassUtils.isPresent(
+					"com.fasterxml.jackson.dataformat.smile.SmileFactory", null)) {
+				codecs.register(FunctionCodecs.SMILE, SmileMapper.create());
+			}
+			if (ClassUtils.isPresent("com.fasterxml.jackson.dataformat.cbor.CBORFactory",
+					null)) {
+				codecs.register(FunctionCodecs.CBOR, CborMapper.create());
+			}
+			return codecs;
+		}
+
 		@Bean
 		public FluxHandlerMethodArgumentResolver fluxHttpMessageConverter(
-				ObjectMapper mapper) {
-			return new FluxHandlerMethodArgumentResolver(mapper);
+				FunctionCodecs codecs, FunctionWebProperties properties,
+				ObjectProvider<FunctionMetrics> metrics) {
+			FluxHandlerMethodArgumentResolver resolver = new FluxHandlerMethodArgumentResolver(
+					codecs);
+			resolver.setStreaming(properties.isStreaming());
+			resolver.setNonBlockingIo(properties.isNonBlockingIo());
+			resolver.setChunkSize(properties.getChunkSize());
+			resolver.setDecompression(properties.getCompression().isEnabled());
+			resolver.setMetrics(metrics.getIfAvailable());
+			return resolver;
+		}
+
+	}
+
+	/**
+	 * Keeps the Smile classes out of the autoconfiguration, so they only need to be
+	 * present if they are used.
+	 */
+	private static class SmileMapper {
+
+		public static ObjectMapper create() {
+			return Jackson2ObjectMapperBuilder.json().factory(new SmileFactory()).build();
+		}
+
+	}
+
+	/**
+	 * Keeps the CBOR classes out of the autoconfiguration, so they only need to be
+	 * present if they are used.
+	 */
+	private static class CborMapper {
+
+		public static ObjectMapper create() {
+			return Jackson2ObjectMapperBuilder.json().factory(new CBORFactory()).build();
 		}
 
 	}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Isolated schedulers for functions that should not run on the servlet container
+ * threads, keyed by function (bean) name. Each one is a bulkhead: it has its own threads
+ * and its own bounded queue, so a slow blocking function can only exhaust its own
+ * resources, and work that does not fit is rejected instead of piling up.
+ *
+ * @author Dave Syer
+ *
+ */
+public class FunctionSchedulers implements DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(FunctionSchedulers.class);
+
+	private final Map<String, Scheduler> schedulers = new ConcurrentHashMap<>();
+
+	private final Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
+
+	/**
+	 * Create (or replace) the scheduler for a function.
+	 *
+	 * @param name the function name
+	 * @param type the kind of scheduler
+	 * @param threads the maximum number of threads (or, for virtual threads, concurrent
+	 * invocations)
+	 * @param queueCapacity the number of tasks that can wait for a thread
+	 */
+	public void configure(String name, Type type, int threads, int queueCapacity) {
+		if (threads < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException(
+					"Threads and queue capacity must be at least 1 for function: " + name);
+		}
+		ExecutorService executor = create(name, type, threads, queueCapacity);
+		ExecutorService old = this.executors.put(name, executor);
+		this.schedulers.put(name, Schedulers.fromExecutorService(executor));
+		if (old != null) {
+			old.shutdown();
+		}
+	}
+
+	/**
+	 * @param name the function name
+	 * @return the scheduler for the function, or null if it runs on the caller thread
+	 */
+	public Scheduler scheduler(String name) {
+		return this.schedulers.get(name);
+	}
+
+	/**
+	 * Check whether a task for the named function would be accepted right now, so that
+	 * a request can be refused (with a 503) before the response is committed. The
+	 * answer can be out of date by the time the task is scheduled, in which case the
+	 * rejection ends the response with an error instead.
+	 *
+	 * @param name the function name
+	 * @return true if there is an idle thread or room in the queue
+	 */
+	public boolean hasCapacity(String name) {
+		ExecutorService executor = this.executors.get(name);
+		if (executor instanceof ThreadPoolExecutor) {
+			ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+			return pool.getActiveCount() < pool.getMaximumPoolSize()
+					|| pool.getQueue().remainingCapacity() > 0;
+		}
+		if (executor instanceof BoundedExecutorService) {
+			return ((BoundedExecutorService) executor).permits.availablePermits() > 0;
+		}
+		return true;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		this.schedulers.clear();
+		for (ExecutorService executor : this.executors.values()) {
+			executor.shutdown();
+		}
+		this.executors.clear();
+	}
+
+	private ExecutorService create(String name, Type type, int threads,
+			int queueCapacity) {
+		CustomizableThreadFactory factory = new CustomizableThreadFactory(
+				"function-" + name + "-");
+		factory.setDaemon(true);
+		switch (type) {
+		case VIRTUAL:
+			ExecutorService virtual = virtualThreadExecutor();
+			if (virtual != null) {
+				return new BoundedExecutorService(virtual, threads + queueCapacity);
+			}
+			logger.warn("Virtual threads are not available on this JVM, using a bounded"
+					+ " elastic scheduler for function: " + name);
+			return create(name, Type.BOUNDED_ELASTIC, threads, queueCapacity);
+		case FIXED:
+			return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(queueCapacity), factory);
+		default:
+			// Starts with no threads, adds one whenever none is idle (up to the maximum)
+			// and releases them when the pool is quiet. Only then does work queue.
+			return new ElasticExecutor(threads, new ElasticQueue(queueCapacity), factory);
+		}
+	}
+
+	private ExecutorService virtualThreadExecutor() {
+		Method method = ReflectionUtils.findMethod(Executors.class,
+				"newVirtualThreadPerTaskExecutor");
+		if (method == null) {
+			return null;
+		}
+		return (ExecutorService) ReflectionUtils.invokeMethod(method, null);
+	}
+
+	/**
+	 * The kind of scheduler to run a function on.
+	 */
+	public enum Type {
+
+		/**
+		 * A pool that grows up to a maximum number of threads and releases them when
+		 * they are idle.
+		 */
+		BOUNDED_ELASTIC,
+
+		/**
+		 * A fixed number of threads.
+		 */
+		FIXED,
+
+		/**
+		 * A new virtual thread per invocation (falls back to
+		 * {@link #BOUNDED_ELASTIC} if the JVM does not support virtual threads).
+		 */
+		VIRTUAL;
+
+	}
+
+	/**
+	 * Thrown when a function's scheduler has no room for more work, and rendered as a
+	 * 503 (Service Unavailable).
+	 */
+	@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE, reason = "Function is busy")
+	@SuppressWarnings("serial")
+	public static class SchedulerFullException extends RejectedExecutionException {
+
+		public SchedulerFullException(String name) {
+			super("No capacity left to run function: " + name);
+		}
+
+	}
+
+	/**
+	 * A thread pool that adds threads (up to its maximum) before it starts queueing,
+	 * unlike a plain {@link ThreadPoolExecutor} which only grows once the queue is full.
+	 * It keeps count of the tasks that have not finished, so it knows when there is no
+	 * idle thread to pick up a new one.
+	 */
+	private static class ElasticExecutor extends ThreadPoolExecutor {
+
+		private final AtomicInteger unfinished = new AtomicInteger();
+
+		public ElasticExecutor(int threads, ElasticQueue queue, ThreadFactory factory) {
+			super(0, threads, 60L, TimeUnit.SECONDS, queue, factory, queue);
+			queue.executor = this;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			this.unfinished.incrementAndGet();
+			try {
+				super.execute(command);
+			}
+			catch (RejectedExecutionException e) {
+				this.unfinished.decrementAndGet();
+				throw e;
+			}
+		}
+
+		@Override
+		protected void afterExecute(Runnable task, Throwable error) {
+			this.unfinished.decrementAndGet();
+		}
+
+	}
+
+	/**
+	 * A bounded queue that refuses work while every thread is busy and the pool can
+	 * still grow, which makes the executor add a thread instead. A task refused because
+	 * the pool reached its maximum in the meantime is queued after all by the
+	 * rejection handler.
+	 */
+	@SuppressWarnings("serial")
+	private static class ElasticQueue extends LinkedBlockingQueue<Runnable>
+			implements RejectedExecutionHandler {
+
+		private volatile ElasticExecutor executor;
+
+		public ElasticQueue(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		public boolean offer(Runnable task) {
+			ElasticExecutor executor = this.executor;
+			if (executor != null) {
+				int threads = executor.getPoolSize();
+				if (executor.unfinished.get() > threads
+						&& threads < executor.getMaximumPoolSize()) {
+					return false;
+				}
+			}
+			return super.offer(task);
+		}
+
+		@Override
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+			if (executor.isShutdown() || !super.offer(task)) {
+				throw new RejectedExecutionException("Queue is full");
+			}
+		}
+
+	}
+
+	/**
+	 * Limits the number of tasks that can be running or waiting in an executor that
+	 * is otherwise unbounded.
+	 */
+	private static class BoundedExecutorService extends AbstractExecutorService {
+
+		private final ExecutorService delegate;
+
+		private final Semaphore permits;
+
+		public BoundedExecutorService(ExecutorService delegate, int limit) {
+			this.delegate = delegate;
+			this.permits = new Semaphore(limit);
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			if (!this.permits.tryAcquire()) {
+				throw new RejectedExecutionException("Too many concurrent invocations");
+			}
+			try {
+				this.delegate.execute(() -> {
+					try {
+						command.run();
+					}
+					finally {
+						this.permits.release();
+					}
+				});
+			}
+			catch (RejectedExecutionException e) {
+				this.permits.release();
+				throw e;
+			}
+		}
+
+		@Override
+		public void shutdown() {
+			this.delegate.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return this.delegate.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return this.delegate.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return this.delegate.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit)
+				throws InterruptedException {
+			return this.delegate.awaitTermination(timeout, unit);
+		}
+
+	}
+
+}
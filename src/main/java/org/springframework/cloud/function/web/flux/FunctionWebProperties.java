@@ -0,0 +1,910 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.function.web.flux.ConsumerExecutors.Rejection;
+import org.springframework.cloud.function.web.flux.FunctionSchedulers.Type;
+import org.springframework.cloud.function.web.flux.response.FlushPolicy;
+import org.springframework.cloud.function.web.flux.response.OverflowPolicy;
+import org.springframework.cloud.function.web.flux.response.OverflowPolicy.Strategy;
+
+/**
+ * Configuration properties for the web endpoints that expose functions.
+ *
+ * @author Dave Syer
+ *
+ */
+@ConfigurationProperties("spring.cloud.function.web")
+public class FunctionWebProperties {
+
+	/**
+	 * Flag to say that request bodies should be decoded incrementally, emitting each
+	 * element of a JSON array to the function as soon as it is parsed, instead of
+	 * reading the whole array into memory first.
+	 */
+	private boolean streaming = false;
+
+	/**
+	 * Flag to say that request and response bodies should be read and written with
+	 * Servlet 3.1 non-blocking I/O, so that slow clients and long lived streams do not
+	 * each hold on to a container thread.
+	 */
+	private boolean nonBlockingIo = false;
+
+	/**
+	 * Number of elements to request at a time from a function that is producing a
+	 * response. The next batch is only requested once the previous one has been
+	 * written to the client.
+	 */
+	private int batchSize = 32;
+
+	/**
+	 * Time in milliseconds after which a response stream with no new elements is
+	 * closed (0 for never).
+	 */
+	private long timeout = 1000L;
+
+	/**
+	 * Size in bytes of the chunks that a binary (byte[] or ByteBuffer) request body is
+	 * read in, one chunk per element.
+	 */
+	private int chunkSize = 8192;
+
+	/**
+	 * Flag to say that string elements of JSON and NDJSON responses should be quoted
+	 * and escaped. By default a string that contains a quote is assumed to be JSON
+	 * already and is written as it is.
+	 */
+	private boolean escapeStrings = false;
+
+	/**
+	 * Thresholds for coalescing response writes, per response media type.
+	 */
+	private final Flush flush = new Flush();
+
+	/**
+	 * Compression of responses and decompression of requests.
+	 */
+	private final Compression compression = new Compression();
+
+	/**
+	 * Execution of consumers.
+	 */
+	private final Consumer consumer = new Consumer();
+
+	/**
+	 * Settings for individual functions, keyed by function (bean) name.
+	 */
+	private final Map<String, Function> functions = new LinkedHashMap<>();
+
+	/**
+	 * Per-function metrics (latency, throughput, in-flight requests).
+	 */
+	private final Metrics metrics = new Metrics();
+
+	public boolean isStreaming() {
+		return this.streaming;
+	}
+
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public boolean isNonBlockingIo() {
+		return this.nonBlockingIo;
+	}
+
+	public void setNonBlockingIo(boolean nonBlockingIo) {
+		this.nonBlockingIo = nonBlockingIo;
+	}
+
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getTimeout() {
+		return this.timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public int getChunkSize() {
+		return this.chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public boolean isEscapeStrings() {
+		return this.escapeStrings;
+	}
+
+	public void setEscapeStrings(boolean escapeStrings) {
+		this.escapeStrings = escapeStrings;
+	}
+
+	public Flush getFlush() {
+		return this.flush;
+	}
+
+	public Compression getCompression() {
+		return this.compression;
+	}
+
+	public Consumer getConsumer() {
+		return this.consumer;
+	}
+
+	public Map<String, Function> getFunctions() {
+		return this.functions;
+	}
+
+	public Metrics getMetrics() {
+		return this.metrics;
+	}
+
+	public static class Function {
+
+		/**
+		 * Where the function runs.
+		 */
+		private final Execution execution = new Execution();
+
+		/**
+		 * Parallel execution over the elements of a request.
+		 */
+		private final Parallel parallel = new Parallel();
+
+		/**
+		 * Batching of concurrent single valued invocations.
+		 */
+		private final Batch batch = new Batch();
+
+		/**
+		 * Caching of the results of single valued invocations.
+		 */
+		private final Cache cache = new Cache();
+
+		/**
+		 * Flag to say that concurrent single valued invocations with equal inputs
+		 * should share one computation.
+		 */
+		private boolean coalesce = false;
+
+		/**
+		 * Sharing of one upstream subscription between all the clients of a supplier.
+		 */
+		private final Shared shared = new Shared();
+
+		/**
+		 * Bounded buffer for each client of a streamed response.
+		 */
+		private final Buffer buffer = new Buffer();
+
+		/**
+		 * Adaptive limit on concurrent requests.
+		 */
+		private final Limit limit = new Limit();
+
+		/**
+		 * Per client rate limit.
+		 */
+		private final Rate rate = new Rate();
+
+		/**
+		 * Idle timeout in milliseconds for response streams (0 for never). Defaults to
+		 * the global timeout.
+		 */
+		private Long timeout;
+
+		/**
+		 * Interval in milliseconds between comments sent on an otherwise idle server
+		 * sent event stream (0 for none).
+		 */
+		private long heartbeat = 0;
+
+		public Execution getExecution() {
+			return this.execution;
+		}
+
+		public Parallel getParallel() {
+			return this.parallel;
+		}
+
+		public Batch getBatch() {
+			return this.batch;
+		}
+
+		public Cache getCache() {
+			return this.cache;
+		}
+
+		public boolean isCoalesce() {
+			return this.coalesce;
+		}
+
+		public void setCoalesce(boolean coalesce) {
+			this.coalesce = coalesce;
+		}
+
+		public Shared getShared() {
+			return this.shared;
+		}
+
+		public Buffer getBuffer() {
+			return this.buffer;
+		}
+
+		public Limit getLimit() {
+			return this.limit;
+		}
+
+		public Rate getRate() {
+			return this.rate;
+		}
+
+		public Long getTimeout() {
+			return this.timeout;
+		}
+
+		public void setTimeout(Long timeout) {
+			this.timeout = timeout;
+		}
+
+		public long getHeartbeat() {
+			return this.heartbeat;
+		}
+
+		public void setHeartbeat(long heartbeat) {
+			this.heartbeat = heartbeat;
+		}
+
+	}
+
+	public static class Limit {
+
+		/**
+		 * Flag to say that concurrent requests should be limited, with a limit that
+		 * adapts to the latency of the function. Requests over the limit are rejected
+		 * with a 503.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * The limit to start with.
+		 */
+		private int initial = 20;
+
+		/**
+		 * The lowest the limit can go.
+		 */
+		private int min = 1;
+
+		/**
+		 * The highest the limit can go.
+		 */
+		private int max = 200;
+
+		/**
+		 * Number of seconds that rejected clients are told to wait before retrying.
+		 */
+		private int retryAfter = 1;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getInitial() {
+			return this.initial;
+		}
+
+		public void setInitial(int initial) {
+			this.initial = initial;
+		}
+
+		public int getMin() {
+			return this.min;
+		}
+
+		public void setMin(int min) {
+			this.min = min;
+		}
+
+		public int getMax() {
+			return this.max;
+		}
+
+		public void setMax(int max) {
+			this.max = max;
+		}
+
+		public int getRetryAfter() {
+			return this.retryAfter;
+		}
+
+		public void setRetryAfter(int retryAfter) {
+			this.retryAfter = retryAfter;
+		}
+
+	}
+
+	public static class Rate {
+
+		/**
+		 * Flag to say that each client should be limited to a rate of requests (with a
+		 * token bucket). Requests over the limit are rejected with a 429.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Sustained number of requests per second allowed for each client.
+		 */
+		private double limit = 10;
+
+		/**
+		 * Number of requests a client can make at once after being idle.
+		 */
+		private int burst = 20;
+
+		/**
+		 * Request header that identifies a client. Defaults to the remote address (also
+		 * used if the header is missing).
+		 */
+		private String keyHeader;
+
+		/**
+		 * Number of clients to keep track of. Beyond that the least active clients are
+		 * forgotten.
+		 */
+		private int maxClients = 10000;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public double getLimit() {
+			return this.limit;
+		}
+
+		public void setLimit(double limit) {
+			this.limit = limit;
+		}
+
+		public int getBurst() {
+			return this.burst;
+		}
+
+		public void setBurst(int burst) {
+			this.burst = burst;
+		}
+
+		public String getKeyHeader() {
+			return this.keyHeader;
+		}
+
+		public void setKeyHeader(String keyHeader) {
+			this.keyHeader = keyHeader;
+		}
+
+		public int getMaxClients() {
+			return this.maxClients;
+		}
+
+		public void setMaxClients(int maxClients) {
+			this.maxClients = maxClients;
+		}
+
+	}
+
+	public static class Compression {
+
+		/**
+		 * Flag to say that responses should be gzipped for clients that accept it, and
+		 * gzip or deflate request bodies decompressed. Request bodies with any other
+		 * encoding (or with any encoding at all if this is off) are rejected with a 415.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Minimum size in bytes of a flushed block of a response for it to be
+		 * compressed. Smaller blocks are stored in the gzip stream as they are.
+		 */
+		private int minSize = 2048;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMinSize() {
+			return this.minSize;
+		}
+
+		public void setMinSize(int minSize) {
+			this.minSize = minSize;
+		}
+
+	}
+
+	public static class Buffer {
+
+		/**
+		 * Maximum number of elements held for each client of a server sent event or
+		 * newline delimited JSON stream. Default (0) is not to buffer, but to slow
+		 * the source down to the pace of the client.
+		 */
+		private int size = 0;
+
+		/**
+		 * What to do when the buffer for a client is full: drop-oldest, latest (keep
+		 * only the newest element) or disconnect.
+		 */
+		private Strategy overflow = Strategy.DROP_OLDEST;
+
+		public int getSize() {
+			return this.size;
+		}
+
+		public void setSize(int size) {
+			this.size = size;
+		}
+
+		public Strategy getOverflow() {
+			return this.overflow;
+		}
+
+		public void setOverflow(Strategy overflow) {
+			this.overflow = overflow;
+		}
+
+		public OverflowPolicy toPolicy() {
+			return new OverflowPolicy(this.size, this.overflow);
+		}
+
+	}
+
+	public static class Shared {
+
+		/**
+		 * Flag to say that all the clients of a supplier should share one upstream
+		 * subscription, made when the first one connects and cancelled when the last
+		 * one disconnects.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Number of recent elements to replay to clients that join late.
+		 */
+		private int replay = 0;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getReplay() {
+			return this.replay;
+		}
+
+		public void setReplay(int replay) {
+			this.replay = replay;
+		}
+
+	}
+
+	public static class Cache {
+
+		/**
+		 * Flag to say that the results of single valued invocations (GET with a path
+		 * variable) should be cached, keyed by input. Only for functions without side
+		 * effects.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Maximum number of cached results.
+		 */
+		private long maxSize = 1000L;
+
+		/**
+		 * Maximum total weight of the cached results (the length of strings and byte
+		 * arrays, 1 for anything else). Zero means no limit.
+		 */
+		private long maxWeight = 0L;
+
+		/**
+		 * Time to live of a cached result in milliseconds. Zero means no expiry.
+		 */
+		private long ttl = 0L;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public long getMaxSize() {
+			return this.maxSize;
+		}
+
+		public void setMaxSize(long maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public long getMaxWeight() {
+			return this.maxWeight;
+		}
+
+		public void setMaxWeight(long maxWeight) {
+			this.maxWeight = maxWeight;
+		}
+
+		public long getTtl() {
+			return this.ttl;
+		}
+
+		public void setTtl(long ttl) {
+			this.ttl = ttl;
+		}
+
+	}
+
+	public static class Batch {
+
+		/**
+		 * Flag to say that concurrent single valued invocations (GET with a path
+		 * variable) should be collected and sent to the function together. The function
+		 * has to emit exactly one result per input, in order.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Maximum number of invocations in a batch.
+		 */
+		private int maxSize = 32;
+
+		/**
+		 * Maximum time in milliseconds an invocation waits for a batch to fill up.
+		 */
+		private long maxWait = 10L;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxSize() {
+			return this.maxSize;
+		}
+
+		public void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public long getMaxWait() {
+			return this.maxWait;
+		}
+
+		public void setMaxWait(long maxWait) {
+			this.maxWait = maxWait;
+		}
+
+	}
+
+	public static class Parallel {
+
+		/**
+		 * Flag to say that a plain (non-reactive) function should be applied to the
+		 * elements of a request in parallel.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Number of rails (0 for the number of processors).
+		 */
+		private int parallelism = 0;
+
+		/**
+		 * Number of elements each rail requests at a time (the chunk size if ordered).
+		 */
+		private int prefetch = 256;
+
+		/**
+		 * Flag to say that results have to be in the same order as the input.
+		 */
+		private boolean ordered = true;
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getParallelism() {
+			return this.parallelism;
+		}
+
+		public void setParallelism(int parallelism) {
+			this.parallelism = parallelism;
+		}
+
+		public int getPrefetch() {
+			return this.prefetch;
+		}
+
+		public void setPrefetch(int prefetch) {
+			this.prefetch = prefetch;
+		}
+
+		public boolean isOrdered() {
+			return this.ordered;
+		}
+
+		public void setOrdered(boolean ordered) {
+			this.ordered = ordered;
+		}
+
+	}
+
+	public static class Execution {
+
+		/**
+		 * The kind of scheduler to run the function on, isolated from the servlet
+		 * container threads. Default is to run on the container thread.
+		 */
+		private Type type;
+
+		/**
+		 * Maximum number of threads (or concurrent invocations for virtual threads).
+		 */
+		private int threads = 10;
+
+		/**
+		 * Number of invocations that can wait for a thread before more are rejected.
+		 */
+		private int queueCapacity = 100;
+
+		public Type getType() {
+			return this.type;
+		}
+
+		public void setType(Type type) {
+			this.type = type;
+		}
+
+		public int getThreads() {
+			return this.threads;
+		}
+
+		public void setThreads(int threads) {
+			this.threads = threads;
+		}
+
+		public int getQueueCapacity() {
+			return this.queueCapacity;
+		}
+
+		public void setQueueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+		}
+
+	}
+
+	public static class Consumer {
+
+		/**
+		 * Flag to say that consumers should run on a bounded executor (one per
+		 * consumer) instead of the servlet thread. The response is then sent as soon as
+		 * the request has been queued (and a streamed body read by the consumer), and
+		 * only contains the number of items accepted.
+		 */
+		private boolean async = false;
+
+		/**
+		 * Number of threads for each consumer when running asynchronously.
+		 */
+		private int poolSize = 1;
+
+		/**
+		 * Number of requests that can wait for a thread, per consumer, when running
+		 * asynchronously. Must be at least 1.
+		 */
+		private int queueCapacity = 100;
+
+		/**
+		 * What to do with a request when the queue for a consumer is full.
+		 */
+		private Rejection rejection = Rejection.REJECT;
+
+		public boolean isAsync() {
+			return this.async;
+		}
+
+		public void setAsync(boolean async) {
+			this.async = async;
+		}
+
+		public int getPoolSize() {
+			return this.poolSize;
+		}
+
+		public void setPoolSize(int poolSize) {
+			this.poolSize = poolSize;
+		}
+
+		public int getQueueCapacity() {
+			return this.queueCapacity;
+		}
+
+		public void setQueueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+		}
+
+		public Rejection getRejection() {
+			return this.rejection;
+		}
+
+		public void setRejection(Rejection rejection) {
+			this.rejection = rejection;
+		}
+
+	}
+
+	public static class Metrics {
+
+		/**
+		 * Flag to enable the per-function metrics and their endpoint. The endpoint is
+		 * not secured, so only enable it where it cannot be reached from outside.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Path of the endpoint that exposes the per-function metrics.
+		 */
+		private String path = "/function-metrics";
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getPath() {
+			return this.path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+	}
+
+	public static class Flush {
+
+		/**
+		 * Flush thresholds for JSON array responses.
+		 */
+		private final Threshold json = new Threshold(FlushPolicy.DEFAULT);
+
+		/**
+		 * Flush thresholds for server sent event responses.
+		 */
+		private final Threshold sse = new Threshold(FlushPolicy.IMMEDIATE);
+
+		/**
+		 * Flush thresholds for newline delimited JSON responses.
+		 */
+		private final Threshold ndjson = new Threshold(FlushPolicy.DEFAULT);
+
+		/**
+		 * Flush thresholds for responses of any other media type.
+		 */
+		private final Threshold plain = new Threshold(FlushPolicy.DEFAULT);
+
+		public Threshold getJson() {
+			return this.json;
+		}
+
+		public Threshold getSse() {
+			return this.sse;
+		}
+
+		public Threshold getNdjson() {
+			return this.ndjson;
+		}
+
+		public Threshold getPlain() {
+			return this.plain;
+		}
+
+	}
+
+	public static class Threshold {
+
+		/**
+		 * Number of buffered bytes that triggers a flush.
+		 */
+		private int bufferSize;
+
+		/**
+		 * Maximum time in milliseconds that a written element can wait in the buffer
+		 * before it is flushed. Zero means every element is flushed immediately.
+		 */
+		private long maxLatency;
+
+		public Threshold(FlushPolicy defaults) {
+			this.bufferSize = defaults.getBufferSize();
+			this.maxLatency = defaults.getMaxLatency();
+		}
+
+		public int getBufferSize() {
+			return this.bufferSize;
+		}
+
+		public void setBufferSize(int bufferSize) {
+			this.bufferSize = bufferSize;
+		}
+
+		public long getMaxLatency() {
+			return this.maxLatency;
+		}
+
+		public void setMaxLatency(long maxLatency) {
+			this.maxLatency = maxLatency;
+		}
+
+		public FlushPolicy toPolicy() {
+			return new FlushPolicy(this.bufferSize, this.maxLatency);
+		}
+
+	}
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Collects concurrent single valued invocations of the same function into batches, so
+ * that a function that is expensive per call (but cheap per element) is called once
+ * with a combined {@link Flux} of inputs. A batch is sent when it is full, or when the
+ * oldest invocation in it has waited long enough. The function has to emit exactly one
+ * result per input, in order, and each result is routed back to the invocation it came
+ * from.
+ *
+ * @author Dave Syer
+ *
+ */
+public class MicroBatcher implements DisposableBean {
+
+	private final Map<String, Batches> batches = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService timer;
+
+	public MicroBatcher() {
+		CustomizableThreadFactory threads = new CustomizableThreadFactory(
+				"function-batch-");
+		threads.setDaemon(true);
+		this.timer = Executors.newSingleThreadScheduledExecutor(threads);
+	}
+
+	/**
+	 * Enable batching for a function.
+	 *
+	 * @param name the function name
+	 * @param maxSize the maximum number of invocations in a batch
+	 * @param maxWait the maximum time in milliseconds that an invocation waits for a
+	 * batch to fill up
+	 */
+	public void configure(String name, int maxSize, long maxWait) {
+		this.batches.put(name, new Batches(maxSize, maxWait));
+	}
+
+	/**
+	 * @param name the function name
+	 * @return true if invocations of the function should be batched
+	 */
+	public boolean isBatched(String name) {
+		return this.batches.containsKey(name);
+	}
+
+	/**
+	 * Add an input to the current batch for a function.
+	 *
+	 * @param name the function name
+	 * @param input the input value
+	 * @param function the function to call with the whole batch
+	 * @param scheduler the scheduler to call the function on (null for the elastic
+	 * scheduler)
+	 * @return the result for this input
+	 */
+	public Mono<Object> submit(String name, Object input,
+			Function<Flux<Object>, Flux<Object>> function, Scheduler scheduler) {
+		return Mono.fromFuture(this.batches.get(name).add(input, function,
+				scheduler == null ? Schedulers.elastic() : scheduler));
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		this.timer.shutdownNow();
+	}
+
+	private class Batches {
+
+		private final int maxSize;
+
+		private final long maxWait;
+
+		private Batch current;
+
+		public Batches(int maxSize, long maxWait) {
+			this.maxSize = maxSize;
+			this.maxWait = maxWait;
+		}
+
+		public CompletableFuture<Object> add(Object input,
+				Function<Flux<Object>, Flux<Object>> function, Scheduler scheduler) {
+			CompletableFuture<Object> future = new CompletableFuture<>();
+			Batch full = null;
+			synchronized (this) {
+				if (this.current == null) {
+					Batch batch = new Batch(function, scheduler);
+					this.current = batch;
+					timer.schedule(() -> expire(batch), this.maxWait,
+							TimeUnit.MILLISECONDS);
+				}
+				this.current.inputs.add(input);
+				this.current.futures.add(future);
+				if (this.current.inputs.size() >= this.maxSize) {
+					full = this.current;
+					this.current = null;
+				}
+			}
+			if (full != null) {
+				full.send();
+			}
+			return future;
+		}
+
+		private void expire(Batch batch) {
+			synchronized (this) {
+				if (this.current != batch) {
+					// Already sent because it was full
+					return;
+				}
+				this.current = null;
+			}
+			batch.send();
+		}
+
+	}
+
+	private static class Batch {
+
+		private final Function<Flux<Object>, Flux<Object>> function;
+
+		private final Scheduler scheduler;
+
+		private final List<Object> inputs = new ArrayList<>();
+
+		private final List<CompletableFuture<Object>> futures = new ArrayList<>();
+
+		public Batch(Function<Flux<Object>, Flux<Object>> function, Scheduler scheduler) {
+			this.function = function;
+			this.scheduler = scheduler;
+		}
+
+		public void send() {
+			Flux.defer(() -> this.function.apply(Flux.fromIterable(this.inputs)))
+					.collectList().subscribeOn(this.scheduler)
+					.subscribe(this::complete, this::fail);
+		}
+
+		private void complete(List<Object> results) {
+			if (results.size() != this.futures.size()) {
+				fail(new IllegalStateException("Batched function returned "
+						+ results.size() + " results for " + this.futures.size()
+						+ " inputs"));
+				return;
+			}
+			for (int i = 0; i < results.size(); i++) {
+				this.futures.get(i).complete(results.get(i));
+			}
+		}
+
+		private void fail(Throwable error) {
+			for (CompletableFuture<Object> future : this.futures) {
+				future.completeExceptionally(error);
+			}
+		}
+
+	}
+
+}
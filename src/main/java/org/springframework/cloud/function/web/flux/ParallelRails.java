@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Parallel execution of plain (non-reactive) functions over the elements of a request,
+ * keyed by function (bean) name. The input is split into rails that each run on a
+ * worker of a scheduler, and merged back either in arrival order of the results, or in
+ * the order of the input elements.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ParallelRails {
+
+	private final Map<String, Options> options = new ConcurrentHashMap<>();
+
+	/**
+	 * Enable parallel execution for a function.
+	 *
+	 * @param name the function name
+	 * @param parallelism the number of rails (0 or less for the number of processors)
+	 * @param prefetch the number of elements each rail requests at a time (and, if
+	 * ordered, the number of elements in each chunk of work)
+	 * @param ordered true if the results should be in the same order as the input
+	 */
+	public void configure(String name, int parallelism, int prefetch, boolean ordered) {
+		if (parallelism <= 0) {
+			parallelism = Runtime.getRuntime().availableProcessors();
+		}
+		this.options.put(name, new Options(parallelism, prefetch, ordered));
+	}
+
+	/**
+	 * @param name the function name
+	 * @return true if the function should be run on parallel rails
+	 */
+	public boolean isParallel(String name) {
+		return this.options.containsKey(name);
+	}
+
+	/**
+	 * Apply a function to the input in parallel.
+	 *
+	 * @param name the function name
+	 * @param function the function to apply to each element
+	 * @param input the input elements
+	 * @param scheduler the scheduler to run the rails on (null for the shared parallel
+	 * scheduler)
+	 * @return the results
+	 */
+	public <T, R> Flux<R> apply(String name, Function<T, R> function, Flux<T> input,
+			Scheduler scheduler) {
+		Options options = this.options.get(name);
+		Scheduler workers = scheduler == null ? Schedulers.parallel() : scheduler;
+		if (!options.ordered) {
+			return input.parallel(options.parallelism, options.prefetch)
+					.runOn(workers).map(function).sequential();
+		}
+		// Chunks of work run concurrently, but their results are re-assembled in order
+		return input.buffer(options.prefetch)
+				.flatMapSequential(chunk -> Mono.fromCallable(() -> map(function, chunk))
+						.subscribeOn(workers), options.parallelism)
+				.flatMapIterable(results -> results);
+	}
+
+	private static <T, R> List<R> map(Function<T, R> function, List<T> chunk) {
+		List<R> results = new ArrayList<>(chunk.size());
+		for (T value : chunk) {
+			results.add(function.apply(value));
+		}
+		return results;
+	}
+
+	private static class Options {
+
+		private final int parallelism;
+
+		private final int prefetch;
+
+		private final boolean ordered;
+
+		public Options(int parallelism, int prefetch, boolean ordered) {
+			this.parallelism = parallelism;
+			this.prefetch = prefetch;
+			this.ordered = ordered;
+		}
+
+	}
+
+}
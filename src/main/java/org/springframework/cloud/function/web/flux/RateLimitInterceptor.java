@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.cloud.function.web.flux.RateLimits.Limiter;
+import org.springframework.cloud.function.web.flux.request.DelegateHandler;
+import org.springframework.cloud.function.web.flux.request.FluxHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Rate limiting for function requests. A client that has used up its tokens is
+ * rejected with a 429 before the request body is read, and told how long to wait.
+ *
+ * @author Dave Syer
+ *
+ */
+class RateLimitInterceptor extends HandlerInterceptorAdapter {
+
+	private final RateLimits limits;
+
+	public RateLimitInterceptor(RateLimits limits) {
+		this.limits = limits;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
+			Object handler) throws Exception {
+		if (request.getDispatcherType() == DispatcherType.ASYNC) {
+			// Already admitted
+			return true;
+		}
+		Object delegate = request.getAttribute(FluxHandlerMethodArgumentResolver.HANDLER);
+		if (!(delegate instanceof DelegateHandler)) {
+			return true;
+		}
+		Limiter limiter = this.limits.limiter(((DelegateHandler<?>) delegate).getName());
+		if (limiter == null) {
+			return true;
+		}
+		long wait = limiter.acquire(key(limiter, request));
+		if (wait > 0) {
+			long seconds = TimeUnit.NANOSECONDS.toSeconds(wait - 1) + 1;
+			response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+			response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+			return false;
+		}
+		return true;
+	}
+
+	private String key(Limiter limiter, HttpServletRequest request) {
+		if (limiter.getKeyHeader() != null) {
+			String key = request.getHeader(limiter.getKeyHeader());
+			if (key != null) {
+				return key;
+			}
+		}
+		return request.getRemoteAddr();
+	}
+
+}
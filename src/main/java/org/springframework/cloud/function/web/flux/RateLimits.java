@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket rate limits for functions, keyed by function (bean) name, with a bucket
+ * per client. Clients are identified by a request header or by their remote address.
+ *
+ * @author Dave Syer
+ *
+ */
+public class RateLimits {
+
+	private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+	/**
+	 * Enable a rate limit for a function.
+	 *
+	 * @param name the function name
+	 * @param limit the sustained number of requests per second allowed for a client
+	 * @param burst the number of requests a client can make at once
+	 * @param keyHeader the header that identifies a client (null to use the remote
+	 * address)
+	 * @param maxClients the number of client buckets to keep
+	 */
+	public void configure(String name, double limit, int burst, String keyHeader,
+			int maxClients) {
+		this.limiters.put(name, new Limiter(limit, burst, keyHeader, maxClients));
+	}
+
+	/**
+	 * @param name the function name
+	 * @return the limiter for the function, or null if it is not limited
+	 */
+	public Limiter limiter(String name) {
+		return this.limiters.get(name);
+	}
+
+	/**
+	 * A table of client buckets with a fixed number of slots. Each client can live in
+	 * one of two slots (picked by hash), and when both are taken by other clients the
+	 * one that has been idle the longest (i.e. whose bucket is fullest) is evicted, so
+	 * forgetting it costs little. Each bucket is a single timestamp (the time at which
+	 * it will be full again) that is updated with a compare-and-set, so nothing is
+	 * locked on the request path.
+	 */
+	public static class Limiter {
+
+		private final long interval;
+
+		private final long window;
+
+		private final String keyHeader;
+
+		private final AtomicReferenceArray<Bucket> buckets;
+
+		private final int mask;
+
+		private final LongAdder rejected = new LongAdder();
+
+		private final LongAdder evicted = new LongAdder();
+
+		Limiter(double limit, int burst, String keyHeader, int maxClients) {
+			this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / limit);
+			this.window = this.interval * Math.max(1, burst);
+			this.keyHeader = keyHeader;
+			int size = Integer.highestOneBit(Math.max(2, maxClients) - 1) << 1;
+			this.buckets = new AtomicReferenceArray<>(size);
+			this.mask = size - 1;
+		}
+
+		/**
+		 * @return the header that identifies a client (or null for the remote address)
+		 */
+		public String getKeyHeader() {
+			return this.keyHeader;
+		}
+
+		public long getRejected() {
+			return this.rejected.sum();
+		}
+
+		public long getEvicted() {
+			return this.evicted.sum();
+		}
+
+		/**
+		 * Take a token from a client's bucket.
+		 *
+		 * @param key the client key
+		 * @return 0 if the request was admitted, otherwise the number of nanoseconds
+		 * until the client can try again
+		 */
+		public long acquire(String key) {
+			long now = System.nanoTime();
+			AtomicLong full = bucket(key, now).full;
+			while (true) {
+				long current = full.get();
+				long next = Math.max(current, now) + this.interval;
+				long wait = next - now - this.window;
+				if (wait > 0) {
+					this.rejected.increment();
+					return wait;
+				}
+				if (full.compareAndSet(current, next)) {
+					return 0L;
+				}
+			}
+		}
+
+		private Bucket bucket(String key, long now) {
+			int hash = spread(key.hashCode());
+			int first = hash & this.mask;
+			int second = (hash >>> 16 ^ hash * 0x9e3779b9) & this.mask;
+			if (second == first) {
+				second = (first + 1) & this.mask;
+			}
+			while (true) {
+				Bucket one = this.buckets.get(first);
+				if (one != null && one.key.equals(key)) {
+					return one;
+				}
+				Bucket two = this.buckets.get(second);
+				if (two != null && two.key.equals(key)) {
+					return two;
+				}
+				int slot;
+				Bucket victim;
+				if (one == null || (two != null && one.idle(now) >= two.idle(now))) {
+					slot = first;
+					victim = one;
+				}
+				else {
+					slot = second;
+					victim = two;
+				}
+				Bucket bucket = new Bucket(key, now);
+				if (this.buckets.compareAndSet(slot, victim, bucket)) {
+					if (victim != null) {
+						this.evicted.increment();
+					}
+					return bucket;
+				}
+			}
+		}
+
+		private static int spread(int hash) {
+			hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+			return (hash >>> 16) ^ hash;
+		}
+
+	}
+
+	private static class Bucket {
+
+		private final String key;
+
+		/**
+		 * The time (from {@link System#nanoTime()}) at which the bucket will be full.
+		 */
+		private final AtomicLong full;
+
+		public Bucket(String key, long full) {
+			this.key = key;
+			this.full = new AtomicLong(full);
+		}
+
+		public long idle(long now) {
+			return now - this.full.get();
+		}
+
+	}
+
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of function results, keyed by input. Entries are kept in least
+ * recently used order, but a new entry only displaces the eldest one if its key has
+ * been asked for more often recently (a TinyLFU admission policy, with frequencies
+ * estimated by a small count-min sketch that is halved periodically so that it adapts
+ * to changes in popularity). The cache is bounded both by number of entries and by
+ * total weight, where the weight of a value is its length for strings and arrays and
+ * 1 otherwise, and entries can expire after a fixed time to live.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ResultCache {
+
+	private final long maxSize;
+
+	private final long maxWeight;
+
+	private final long ttl;
+
+	private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f,
+			true);
+
+	private final FrequencySketch sketch;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	private final LongAdder rejections = new LongAdder();
+
+	private long weight;
+
+	/**
+	 * @param maxSize the maximum number of entries (0 or less to store nothing)
+	 * @param maxWeight the maximum total weight of the values (0 or less for no limit)
+	 * @param ttl the time to live of an entry in milliseconds (0 or less for no expiry)
+	 */
+	public ResultCache(long maxSize, long maxWeight, long ttl) {
+		this.maxSize = maxSize;
+		this.maxWeight = maxWeight <= 0 ? Long.MAX_VALUE : maxWeight;
+		this.ttl = ttl;
+		this.sketch = new FrequencySketch((int) Math.min(maxSize, 1 << 20));
+	}
+
+	/**
+	 * @param key the input
+	 * @return the cached result, or null if there is none
+	 */
+	public synchronized Object get(Object key) {
+		this.sketch.increment(key);
+		Entry entry = this.entries.get(key);
+		if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+			remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			this.misses.increment();
+			return null;
+		}
+		this.hits.increment();
+		return entry.value;
+	}
+
+	/**
+	 * Store a result, if the admission policy lets it in. A key that is already cached
+	 * has been admitted before, so its value is just replaced (making room if it is
+	 * heavier than the old one).
+	 *
+	 * @param key the input
+	 * @param value the result
+	 */
+	public synchronized void put(Object key, Object value) {
+		long weight = weigh(value);
+		if (this.maxSize <= 0 || weight > this.maxWeight) {
+			// No room for it even in an empty cache
+			this.rejections.increment();
+			return;
+		}
+		long expires = this.ttl > 0 ? System.currentTimeMillis() + this.ttl : 0L;
+		Entry existing = this.entries.get(key);
+		if (existing != null) {
+			// Now the most recently used, so it is the last to go
+			this.entries.put(key, new Entry(value, weight, expires));
+			this.weight += weight - existing.weight;
+			while (this.weight > this.maxWeight) {
+				Iterator<Map.Entry<Object, Entry>> eldest = this.entries.entrySet()
+						.iterator();
+				this.weight -= eldest.next().getValue().weight;
+				eldest.remove();
+				this.evictions.increment();
+			}
+			return;
+		}
+		while (!this.entries.isEmpty() && (this.entries.size() >= this.maxSize
+				|| this.weight + weight > this.maxWeight)) {
+			Iterator<Map.Entry<Object, Entry>> eldest = this.entries.entrySet()
+					.iterator();
+			Map.Entry<Object, Entry> victim = eldest.next();
+			if (!victim.getValue().isExpired(System.currentTimeMillis()) && this.sketch
+					.frequency(key) <= this.sketch.frequency(victim.getKey())) {
+				// The candidate is not popular enough to displace anything
+				this.rejections.increment();
+				return;
+			}
+			eldest.remove();
+			this.weight -= victim.getValue().weight;
+			this.evictions.increment();
+		}
+		this.entries.put(key, new Entry(value, weight, expires));
+		this.weight += weight;
+	}
+
+	/**
+	 * Remove a result, e.g. because the function's answer has changed.
+	 *
+	 * @param key the input
+	 */
+	public synchronized void invalidate(Object key) {
+		remove(key);
+	}
+
+	/**
+	 * Remove all results.
+	 */
+	public synchronized void invalidateAll() {
+		this.entries.clear();
+		this.weight = 0L;
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+
+	public long getRejections() {
+		return this.rejections.sum();
+	}
+
+	/**
+	 * @return a summary of the statistics of the cache
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("size", size());
+		snapshot.put("hits", getHits());
+		snapshot.put("misses", getMisses());
+		snapshot.put("evictions", getEvictions());
+		snapshot.put("rejections", getRejections());
+		return snapshot;
+	}
+
+	private void remove(Object key) {
+		Entry entry = this.entries.remove(key);
+		if (entry != null) {
+			this.weight -= entry.weight;
+		}
+	}
+
+	private static long weigh(Object value) {
+		if (value instanceof CharSequence) {
+			return Math.max(1, ((CharSequence) value).length());
+		}
+		if (value instanceof byte[]) {
+			return Math.max(1, ((byte[]) value).length);
+		}
+		return 1L;
+	}
+
+	private static class Entry {
+
+		private final Object value;
+
+		private final long weight;
+
+		private final long expires;
+
+		public Entry(Object value, long weight, long expires) {
+			this.value = value;
+			this.weight = weight;
+			this.expires = expires;
+		}
+
+		public boolean isExpired(long now) {
+			return this.expires > 0 && now >= this.expires;
+		}
+
+	}
+
+	/**
+	 * Approximate access frequencies in 4-bit saturating counters, 4 per key, with all
+	 * counters halved after a number of increments proportional to the table size.
+	 */
+	private static class FrequencySketch {
+
+		private static final int[] SEEDS = { 0x97cb3127, 0xbe5466cf, 0x7d6f7b1d,
+				0x3c6ef372 };
+
+		private final byte[] table;
+
+		private final int mask;
+
+		private final int sampleSize;
+
+		private int additions;
+
+		public FrequencySketch(int capacity) {
+			int size = Integer.highestOneBit(Math.max(16, capacity * 4) - 1) << 1;
+			this.table = new byte[size];
+			this.mask = size - 1;
+			this.sampleSize = 10 * Math.max(16, capacity);
+		}
+
+		public void increment(Object key) {
+			int hash = spread(key.hashCode());
+			for (int seed : SEEDS) {
+				int index = index(hash, seed);
+				if (this.table[index] < 15) {
+					this.table[index]++;
+				}
+			}
+			if (++this.additions >= this.sampleSize) {
+				for (int i = 0; i < this.table.length; i++) {
+					this.table[i] >>= 1;
+				}
+				this.additions /= 2;
+			}
+		}
+
+		public int frequency(Object key) {
+			int hash = spread(key.hashCode());
+			int frequency = 15;
+			for (int seed : SEEDS) {
+				frequency = Math.min(frequency, this.table[index(hash, seed)]);
+			}
+			return frequency;
+		}
+
+		private int index(int hash, int seed) {
+			int h = (hash ^ seed) * 0x9e3779b9;
+			return (h ^ (h >>> 16)) & this.mask;
+		}
+
+		private static int spread(int hash) {
+			hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+			return (hash >>> 16) ^ hash;
+		}
+
+	}
+
+}
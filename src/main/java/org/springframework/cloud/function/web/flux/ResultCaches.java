@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of {@link ResultCache result caches} for the functions that have one, keyed
+ * by function (bean) name. Only single valued invocations (GET with a path variable)
+ * are cached, so the functions should be free of side effects.
+ *
+ * @author Dave Syer
+ *
+ */
+public class ResultCaches {
+
+	private final Map<String, ResultCache> caches = new ConcurrentHashMap<>();
+
+	/**
+	 * Enable caching for a function.
+	 *
+	 * @param name the function name
+	 * @param maxSize the maximum number of entries
+	 * @param maxWeight the maximum total weight of the values (0 for no limit)
+	 * @param ttl the time to live of an entry in milliseconds (0 for no expiry)
+	 */
+	public void configure(String name, long maxSize, long maxWeight, long ttl) {
+		this.caches.put(name, new ResultCache(maxSize, maxWeight, ttl));
+	}
+
+	/**
+	 * @param name the function name
+	 * @return the cache for the function, or null if it does not have one
+	 */
+	public ResultCache cache(String name) {
+		return this.caches.get(name);
+	}
+
+	public Set<String> getNames() {
+		return this.caches.keySet();
+	}
+
+	/**
+	 * Remove a cached result.
+	 *
+	 * @param name the function name
+	 * @param input the (converted) input
+	 */
+	public void invalidate(String name, Object input) {
+		ResultCache cache = this.caches.get(name);
+		if (cache != null) {
+			cache.invalidate(input);
+		}
+	}
+
+	/**
+	 * Remove all the cached results for a function.
+	 *
+	 * @param name the function name
+	 */
+	public void invalidateAll(String name) {
+		ResultCache cache = this.caches.get(name);
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * @return the statistics of all the caches, keyed by function name
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new TreeMap<>();
+		for (Map.Entry<String, ResultCache> entry : this.caches.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().snapshot());
+		}
+		return snapshot;
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Shared subscriptions to suppliers, keyed by supplier (bean) name. All the clients of
+ * a shared supplier see the same elements from a single upstream subscription, which
+ * is made when the first client connects and cancelled when the last one goes away.
+ * Optionally the most recent elements are replayed to clients that join late.
+ *
+ * @author Dave Syer
+ *
+ */
+public class SharedSuppliers {
+
+	private final Map<String, Integer> replays = new ConcurrentHashMap<>();
+
+	private final Map<String, Flux<Object>> shared = new ConcurrentHashMap<>();
+
+	/**
+	 * Enable sharing for a supplier.
+	 *
+	 * @param name the supplier name
+	 * @param replay the number of recent elements to replay to late joiners (0 for
+	 * none)
+	 */
+	public void configure(String name, int replay) {
+		this.replays.put(name, replay);
+	}
+
+	/**
+	 * @param name the supplier name
+	 * @return true if the supplier should be shared
+	 */
+	public boolean isShared(String name) {
+		return this.replays.containsKey(name);
+	}
+
+	/**
+	 * @param name the supplier name
+	 * @param source a factory for a new upstream subscription (called every time the
+	 * first client connects)
+	 * @return the shared flux
+	 */
+	public Flux<Object> get(String name, Supplier<Flux<Object>> source) {
+		Flux<Object> flux = this.shared.get(name);
+		if (flux == null) {
+			flux = this.shared.computeIfAbsent(name, key -> share(key, source));
+		}
+		return flux;
+	}
+
+	private Flux<Object> share(String name, Supplier<Flux<Object>> source) {
+		int replay = this.replays.get(name);
+		Flux<Object> upstream = Flux.defer(source);
+		return replay > 0 ? upstream.replay(replay).refCount()
+				: upstream.publish().refCount();
+	}
+
+}
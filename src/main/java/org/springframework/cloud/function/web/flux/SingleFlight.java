@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Coalesces concurrent invocations of the same function with equal inputs, so that
+ * only one computation is in flight per input and all the callers share its result
+ * (or its error). A caller that cancels only stops waiting for itself: the computation
+ * is only cancelled if all of its callers have gone away, in which case any that are
+ * still in the middle of joining see a {@link CancellationException}.
+ *
+ * @author Dave Syer
+ *
+ */
+public class SingleFlight {
+
+	private final Map<String, Map<Object, Flight>> flights = new ConcurrentHashMap<>();
+
+	/**
+	 * Enable coalescing for a function.
+	 *
+	 * @param name the function name
+	 */
+	public void configure(String name) {
+		this.flights.putIfAbsent(name, new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * @param name the function name
+	 * @return true if invocations of the function should be coalesced
+	 */
+	public boolean isCoalesced(String name) {
+		return this.flights.containsKey(name);
+	}
+
+	public Set<String> getNames() {
+		return this.flights.keySet();
+	}
+
+	/**
+	 * @param name the function name
+	 * @return the number of computations in flight for the function
+	 */
+	public int getInFlight(String name) {
+		Map<Object, Flight> flights = this.flights.get(name);
+		return flights == null ? 0 : flights.size();
+	}
+
+	/**
+	 * Join the computation in flight for an input, or start a new one.
+	 *
+	 * @param name the function name
+	 * @param input the (converted) input
+	 * @param computation the computation to start if there is none in flight
+	 * @return the shared result
+	 */
+	public Mono<Object> execute(String name, Object input,
+			Supplier<Mono<Object>> computation) {
+		Map<Object, Flight> flights = this.flights.get(name);
+		return Mono.defer(() -> {
+			Flight flight;
+			do {
+				flight = flights.computeIfAbsent(input,
+						key -> new Flight(flights, key));
+			}
+			while (!flight.join());
+			flight.start(computation);
+			Flight joined = flight;
+			// Not Mono.fromFuture(), which may cancel the shared future on cancel
+			return Mono.create(sink -> joined.future.whenComplete((value, error) -> {
+				if (error != null) {
+					sink.error(error);
+				}
+				else if (value != null) {
+					sink.success(value);
+				}
+				else {
+					sink.success();
+				}
+			})).doOnCancel(joined::leave);
+		});
+	}
+
+	private static class Flight implements Subscriber<Object> {
+
+		private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+		private final AtomicInteger waiters = new AtomicInteger();
+
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		private final Map<Object, Flight> flights;
+
+		private final Object key;
+
+		private volatile Subscription subscription;
+
+		private Object value;
+
+		public Flight(Map<Object, Flight> flights, Object key) {
+			this.flights = flights;
+			this.key = key;
+		}
+
+		/**
+		 * @return false if the flight has already been abandoned by all its waiters
+		 */
+		public boolean join() {
+			while (true) {
+				int count = this.waiters.get();
+				if (count < 0) {
+					return false;
+				}
+				if (this.waiters.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+		}
+
+		public void leave() {
+			if (this.waiters.decrementAndGet() == 0 && !this.future.isDone()
+					&& this.waiters.compareAndSet(0, -1)) {
+				// Nobody is waiting any more
+				Subscription subscription = this.subscription;
+				if (subscription != null) {
+					subscription.cancel();
+				}
+				this.flights.remove(this.key, this);
+				this.future.completeExceptionally(new CancellationException());
+			}
+		}
+
+		public void start(Supplier<Mono<Object>> computation) {
+			if (this.started.compareAndSet(false, true)) {
+				Mono<Object> result;
+				try {
+					result = computation.get();
+				}
+				catch (RuntimeException e) {
+					onError(e);
+					return;
+				}
+				result.subscribe(this);
+			}
+		}
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			this.flights.remove(this.key, this);
+			this.future.completeExceptionally(error);
+		}
+
+		@Override
+		public void onComplete() {
+			this.flights.remove(this.key, this);
+			this.future.complete(this.value);
+		}
+
+	}
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements for a single function: how long request bodies take to decode, how long
+ * until the first element of the response is written, how long the whole response
+ * stream lasts, how many elements and bytes it contains, and how often it fails or
+ * times out. All counters are striped, so concurrent requests do not contend.
+ *
+ * @author Dave Syer
+ *
+ */
+public class FunctionMeter {
+
+	private final String name;
+
+	private final LatencyHistogram decode = new LatencyHistogram();
+
+	private final LatencyHistogram firstElement = new LatencyHistogram();
+
+	private final LatencyHistogram duration = new LatencyHistogram();
+
+	private final LongAdder elements = new LongAdder();
+
+	private final LongAdder bytes = new LongAdder();
+
+	private final LongAdder errors = new LongAdder();
+
+	private final LongAdder timeouts = new LongAdder();
+
+	private final LongAdder inFlight = new LongAdder();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final LongAdder conflated = new LongAdder();
+
+	private final LongAdder disconnected = new LongAdder();
+
+	public FunctionMeter(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public void decoded(long nanos) {
+		this.decode.record(nanos);
+	}
+
+	/**
+	 * Record the start of a response stream.
+	 *
+	 * @return a timestamp to pass to {@link #firstElement(long)} and
+	 * {@link #finished(long)}
+	 */
+	public long started() {
+		this.inFlight.increment();
+		return System.nanoTime();
+	}
+
+	public void firstElement(long start) {
+		this.firstElement.record(System.nanoTime() - start);
+	}
+
+	public void element() {
+		this.elements.increment();
+	}
+
+	public void bytes(long count) {
+		this.bytes.add(count);
+	}
+
+	public void error() {
+		this.errors.increment();
+	}
+
+	public void timeout() {
+		this.timeouts.increment();
+	}
+
+	/**
+	 * Record elements dropped from a full client buffer (oldest first).
+	 *
+	 * @param count the number of elements dropped
+	 */
+	public void dropped(long count) {
+		this.dropped.add(count);
+	}
+
+	/**
+	 * Record elements discarded from a full client buffer in favour of a newer one.
+	 *
+	 * @param count the number of elements discarded
+	 */
+	public void conflated(long count) {
+		this.conflated.add(count);
+	}
+
+	/**
+	 * Record a client that was disconnected because its buffer was full.
+	 */
+	public void disconnected() {
+		this.disconnected.increment();
+	}
+
+	/**
+	 * Record the end of a response stream (whether it completed, failed or was
+	 * cancelled).
+	 *
+	 * @param start the timestamp from {@link #started()}
+	 */
+	public void finished(long start) {
+		this.duration.record(System.nanoTime() - start);
+		this.inFlight.decrement();
+	}
+
+	public LatencyHistogram getDecode() {
+		return this.decode;
+	}
+
+	public LatencyHistogram getFirstElement() {
+		return this.firstElement;
+	}
+
+	public LatencyHistogram getDuration() {
+		return this.duration;
+	}
+
+	public long getElements() {
+		return this.elements.sum();
+	}
+
+	public long getBytes() {
+		return this.bytes.sum();
+	}
+
+	public long getErrors() {
+		return this.errors.sum();
+	}
+
+	public long getTimeouts() {
+		return this.timeouts.sum();
+	}
+
+	public long getInFlight() {
+		return this.inFlight.sum();
+	}
+
+	public long getDropped() {
+		return this.dropped.sum();
+	}
+
+	public long getConflated() {
+		return this.conflated.sum();
+	}
+
+	public long getDisconnected() {
+		return this.disconnected.sum();
+	}
+
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("inFlight", getInFlight());
+		snapshot.put("elements", getElements());
+		snapshot.put("bytes", getBytes());
+		snapshot.put("errors", getErrors());
+		snapshot.put("timeouts", getTimeouts());
+		Map<String, Object> overflow = new LinkedHashMap<>();
+		overflow.put("dropped", getDropped());
+		overflow.put("conflated", getConflated());
+		overflow.put("disconnected", getDisconnected());
+		snapshot.put("overflow", overflow);
+		snapshot.put("decode", this.decode.snapshot());
+		snapshot.put("firstElement", this.firstElement.snapshot());
+		snapshot.put("duration", this.duration.snapshot());
+		return snapshot;
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.metrics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of {@link FunctionMeter meters}, one per function, keyed by function (bean)
+ * name. This is the programmatic API to the function metrics: they are also exposed
+ * over HTTP by the {@link FunctionMetricsEndpoint}.
+ *
+ * @author Dave Syer
+ *
+ */
+public class FunctionMetrics {
+
+	private final ConcurrentMap<String, FunctionMeter> meters = new ConcurrentHashMap<>();
+
+	/**
+	 * Get (or create) the meter for a function.
+	 *
+	 * @param name the function name
+	 * @return the meter for the function
+	 */
+	public FunctionMeter meter(String name) {
+		FunctionMeter meter = this.meters.get(name);
+		if (meter == null) {
+			meter = this.meters.computeIfAbsent(name, FunctionMeter::new);
+		}
+		return meter;
+	}
+
+	public Set<String> getNames() {
+		return this.meters.keySet();
+	}
+
+	/**
+	 * @param name the function name
+	 * @return a summary of the measurements for the function (empty if it has not been
+	 * called yet)
+	 */
+	public Map<String, Object> snapshot(String name) {
+		FunctionMeter meter = this.meters.get(name);
+		return meter == null ? new TreeMap<>() : meter.snapshot();
+	}
+
+	/**
+	 * @return a summary of the measurements for all the functions that have been
+	 * called, keyed by name
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new TreeMap<>();
+		for (FunctionMeter meter : this.meters.values()) {
+			snapshot.put(meter.getName(), meter.snapshot());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Discard all measurements.
+	 */
+	public void reset() {
+		this.meters.clear();
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.springframework.cloud.function.web.flux.ResultCaches;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * HTTP endpoint for the {@link FunctionMetrics}. The path is
+ * <code>spring.cloud.function.web.metrics.path</code> (default
+ * <code>/function-metrics</code>), with an optional <code>name</code> query parameter
+ * to select a single function. The statistics of the result caches are under
+ * <code>/caches</code> below the same path.
+ *
+ * @author Dave Syer
+ *
+ */
+@RestController
+public class FunctionMetricsEndpoint {
+
+	private final FunctionMetrics metrics;
+
+	private ResultCaches caches;
+
+	public FunctionMetricsEndpoint(FunctionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Result caches to report the statistics of (optional).
+	 *
+	 * @param caches the caches to set
+	 */
+	public void setCaches(ResultCaches caches) {
+		this.caches = caches;
+	}
+
+	@GetMapping("${spring.cloud.function.web.metrics.path:/function-metrics}")
+	public Map<String, Object> metrics(
+			@RequestParam(name = "name", required = false) String name) {
+		if (name != null) {
+			return this.metrics.snapshot(name);
+		}
+		return this.metrics.snapshot();
+	}
+
+	@GetMapping("${spring.cloud.function.web.metrics.path:/function-metrics}/caches")
+	public Map<String, Object> caches() {
+		if (this.caches == null) {
+			return Collections.emptyMap();
+		}
+		return this.caches.snapshot();
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, with logarithmic buckets (8 linear
+ * sub-buckets per power of two, so about 12% precision over the whole range of a
+ * long). Recording a value is a handful of arithmetic operations and an atomic
+ * increment, so it can be called on every request without adding contention.
+ *
+ * @author Dave Syer
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		this.buckets.incrementAndGet(index(nanos));
+		this.count.increment();
+		this.sum.add(nanos);
+		this.max.accumulate(nanos);
+	}
+
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	public long getMax() {
+		return this.max.get();
+	}
+
+	public double getMean() {
+		long count = this.count.sum();
+		return count == 0 ? 0 : (double) this.sum.sum() / count;
+	}
+
+	/**
+	 * Estimate a percentile of the recorded values.
+	 *
+	 * @param percentile a value between 0 and 1
+	 * @return the estimated value in nanoseconds (the middle of the bucket that contains
+	 * the percentile)
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = this.buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile * total));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			cumulative += counts[i];
+			if (cumulative >= target) {
+				long lower = lowerBound(i);
+				long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+				return Math.min(lower + (upper - lower) / 2, getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * @return a summary of the histogram with durations in milliseconds
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("count", getCount());
+		snapshot.put("mean", millis(getMean()));
+		snapshot.put("p50", millis(getPercentile(0.5)));
+		snapshot.put("p90", millis(getPercentile(0.9)));
+		snapshot.put("p99", millis(getPercentile(0.99)));
+		snapshot.put("max", millis(getMax()));
+		return snapshot;
+	}
+
+	private static double millis(double nanos) {
+		return nanos / 1000000.0;
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long lowerBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = index % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub)) << (exponent - SUB_BUCKET_BITS);
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+/**
+ * Decoder for a binary request body. The body is read straight from the request stream
+ * into fixed size chunks, one per element, and each chunk is only read when there is
+ * demand for it downstream. Elements are <code>byte[]</code> or (wrapping the chunk,
+ * not copying it) {@link ByteBuffer}.
+ *
+ * @author Dave Syer
+ *
+ */
+public class BinaryDecoder {
+
+	private final int chunkSize;
+
+	public BinaryDecoder(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param type a function input or output type
+	 * @return true if the type is carried as raw bytes
+	 */
+	public static boolean isBinary(Class<?> type) {
+		return type != null
+				&& (byte[].class == type || ByteBuffer.class.isAssignableFrom(type));
+	}
+
+	public Flux<Object> decode(InputStream stream, Class<?> type) {
+		boolean buffer = ByteBuffer.class.isAssignableFrom(type);
+		return Flux.<Object, InputStream>generate(() -> stream,
+				(input, sink) -> next(input, buffer, sink), input -> close(input));
+	}
+
+	private InputStream next(InputStream input, boolean buffer,
+			SynchronousSink<Object> sink) {
+		try {
+			byte[] chunk = new byte[this.chunkSize];
+			int length = 0;
+			while (length < chunk.length) {
+				int count = input.read(chunk, length, chunk.length - length);
+				if (count < 0) {
+					break;
+				}
+				length += count;
+			}
+			if (length == 0) {
+				sink.complete();
+			}
+			else if (buffer) {
+				sink.next(ByteBuffer.wrap(chunk, 0, length));
+			}
+			else {
+				sink.next(length == chunk.length ? chunk : Arrays.copyOf(chunk, length));
+			}
+		}
+		catch (IOException e) {
+			sink.error(e);
+		}
+		return input;
+	}
+
+	private void close(InputStream input) {
+		try {
+			input.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+	}
+
+}
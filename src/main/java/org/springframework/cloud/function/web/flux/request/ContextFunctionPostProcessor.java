@@ -19,16 +19,23 @@ package org.springframework.cloud.function.web.flux.request;
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
 import org.springframework.beans.BeansException;
-import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
@@ -44,21 +51,41 @@ import org.springframework.core.type.StandardMethodMetadata;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
 
 import reactor.core.publisher.Flux;
 
 @Component
-class ContextFunctionPostProcessor
-		implements BeanPostProcessor, BeanDefinitionRegistryPostProcessor {
+class ContextFunctionPostProcessor implements BeanPostProcessor,
+		BeanDefinitionRegistryPostProcessor, SmartInitializingSingleton {
+
+	private Map<Object, String> functions = new ConcurrentHashMap<>();
 
-	private Map<Object, String> functions = new HashMap<>();
+	/**
+	 * Metadata for all the functions known at startup, keyed by bean name. Replaced
+	 * wholesale, never modified, so it can be read without locking.
+	 */
+	private volatile Map<String, FunctionMetadata> metadata = Collections.emptyMap();
 
-	private Map<Object, Object> handlers = new HashMap<>();
+	/**
+	 * Adapted function handlers, keyed by the source (bean name or bean) they were
+	 * created from. Filled eagerly at startup and copied on write afterwards, so that
+	 * request threads can read it without locking.
+	 */
+	private volatile Map<Object, Object> handlers = Collections.emptyMap();
+
+	/**
+	 * The function beans the handlers were adapted from, with the same keys and
+	 * lifecycle as the handlers.
+	 */
+	private volatile Map<Object, Object> targets = Collections.emptyMap();
 
 	private BeanDefinitionRegistry registry;
 
 	private ConfigurableListableBeanFactory factory;
 
+	private TypeFactory typeFactory;
+
 	@Override
 	public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
 		this.registry = registry;
@@ -70,6 +97,27 @@ class ContextFunctionPostProcessor
 		this.factory = factory;
 	}
 
+	@Override
+	public void afterSingletonsInstantiated() {
+		Map<String, FunctionMetadata> metadata = new HashMap<>();
+		for (Map.Entry<Object, String> entry : functions.entrySet()) {
+			String name = entry.getValue();
+			metadata.put(name, createMetadata(name, entry.getKey()));
+		}
+		this.metadata = Collections.unmodifiableMap(metadata);
+		Map<Object, Object> handlers = new HashMap<>();
+		Map<Object, Object> targets = new HashMap<>();
+		for (String name : metadata.keySet()) {
+			if (factory.containsSingleton(name)) {
+				Object target = factory.getBean(name);
+				handlers.put(name, wrap(name, target));
+				targets.put(name, target);
+			}
+		}
+		this.targets = Collections.unmodifiableMap(targets);
+		this.handlers = Collections.unmodifiableMap(handlers);
+	}
+
 	@Override
 	public Object postProcessAfterInitialization(Object bean, String name)
 			throws BeansException {
@@ -89,25 +137,21 @@ class ContextFunctionPostProcessor
 		return bean;
 	}
 
-	private Class<?> findType(AbstractBeanDefinition definition, int index) {
-		Type param;
-		Type[] types = findTypes(definition);
-		if (types.length > index) {
-			Type typeArgumentAtIndex = types[index];
-			if (typeArgumentAtIndex instanceof ParameterizedType) {
-				param = ((ParameterizedType) typeArgumentAtIndex)
-						.getActualTypeArguments()[0];
-			}
-			else {
-				param = typeArgumentAtIndex;
-			}
-			if (param instanceof ParameterizedType) {
-				ParameterizedType concrete = (ParameterizedType) param;
-				param = concrete.getRawType();
-			}
+	private Type findElementType(Type[] types, int index) {
+		if (types.length <= index) {
+			return null;
 		}
-		else {
-			param = types[0];
+		Type typeArgumentAtIndex = types[index];
+		if (typeArgumentAtIndex instanceof ParameterizedType) {
+			return ((ParameterizedType) typeArgumentAtIndex).getActualTypeArguments()[0];
+		}
+		return typeArgumentAtIndex;
+	}
+
+	private Class<?> findType(Type param) {
+		if (param instanceof ParameterizedType) {
+			ParameterizedType concrete = (ParameterizedType) param;
+			param = concrete.getRawType();
 		}
 		return ClassUtils.resolveClassName(param.getTypeName(),
 				registry.getClass().getClassLoader());
@@ -146,85 +190,204 @@ class ContextFunctionPostProcessor
 
 	}
 
+	private Type[] findTypes(String name) {
+		if (!registry.containsBeanDefinition(name)) {
+			return null;
+		}
+		try {
+			return findTypes((AbstractBeanDefinition) registry.getBeanDefinition(name));
+		}
+		catch (RuntimeException e) {
+			// Not introspectable, fall back to the runtime type of the bean
+			return null;
+		}
+	}
+
 	private Object getField(Object target, String name) {
 		Field field = ReflectionUtils.findField(target.getClass(), name);
 		ReflectionUtils.makeAccessible(field);
 		return ReflectionUtils.getField(field, target);
 	}
 
-	public Class<?> findInputType(Object bean) {
-		if (functions.containsKey(bean)) {
-			return findType((AbstractBeanDefinition) registry
-					.getBeanDefinition(functions.get(bean)), 0);
+	/**
+	 * Look up the metadata for a function, given its bean name or the bean itself.
+	 * Functions that were known at startup are found in a precomputed registry.
+	 *
+	 * @param source the bean name or the function bean
+	 * @return the metadata (or null if the source is not a known function)
+	 */
+	public FunctionMetadata metadata(Object source) {
+		String name = source instanceof String ? (String) source
+				: functions.get(source);
+		if (name == null) {
+			return null;
 		}
-		return null;
+		FunctionMetadata result = this.metadata.get(name);
+		if (result == null) {
+			synchronized (this) {
+				result = this.metadata.get(name);
+				if (result == null) {
+					// Not instantiated at startup (e.g. a lazy bean)
+					result = createMetadata(name,
+							source instanceof String ? factory.getBean(name) : source);
+					Map<String, FunctionMetadata> metadata = new HashMap<>(
+							this.metadata);
+					metadata.put(name, result);
+					this.metadata = Collections.unmodifiableMap(metadata);
+				}
+			}
+		}
+		return result;
+	}
+
+	public Class<?> findInputType(Object bean) {
+		FunctionMetadata metadata = metadata(bean);
+		return metadata == null ? null : metadata.getInputType();
 	}
 
 	public Class<?> findOutputType(Object bean) {
-		if (functions.containsKey(bean)) {
-			return findType((AbstractBeanDefinition) registry
-					.getBeanDefinition(functions.get(bean)), 1);
-		}
-		return null;
+		FunctionMetadata metadata = metadata(bean);
+		return metadata == null ? null : metadata.getOutputType();
 	}
 
-	@SuppressWarnings({ "unchecked" })
-	public <T> T handler(Object source) {
-		if (!handlers.containsKey(source)) {
-			T handler;
-			if (source instanceof String) {
-				handler = (T) factory.getBean((String) source);
+	private FunctionMetadata createMetadata(String name, Object bean) {
+		String[] names = StringUtils.addStringToArray(registry.getAliases(name), name);
+		Class<?> inputType = null;
+		Class<?> outputType = null;
+		JavaType inputJavaType = null;
+		JavaType outputJavaType = null;
+		Type[] types = findTypes(name);
+		if (types != null && types.length > 0) {
+			// A supplier only has an output, and a consumer only has an input
+			Type input = bean instanceof Supplier ? null : findElementType(types, 0);
+			Type output = bean instanceof Consumer ? null
+					: findElementType(types, bean instanceof Supplier ? 0 : 1);
+			try {
+				TypeFactory typeFactory = typeFactory();
+				if (input != null) {
+					inputType = findType(input);
+					inputJavaType = typeFactory.constructType(input);
+				}
+				if (output != null) {
+					outputType = findType(output);
+					outputJavaType = typeFactory.constructType(output);
+				}
 			}
-			else {
-				handler = (T) source;
+			catch (IllegalArgumentException e) {
+				// Generic type that cannot be resolved to a class
 			}
-			String name = functions.get(handler);
-			if (handler instanceof Function
-					&& !isFluxFunction(name, (Function<?, ?>) handler)) {
-				handler = (T) new FluxFunction<Object, Object>(
-						(Function<Object, Object>) handler);
+		}
+		boolean flux;
+		if (bean instanceof Function) {
+			flux = isFluxFunction(types, (Function<?, ?>) bean);
+		}
+		else if (bean instanceof Consumer) {
+			flux = isFluxConsumer(types, (Consumer<?>) bean);
+		}
+		else {
+			flux = isFluxSupplier(types, (Supplier<?>) bean);
+		}
+		return new FunctionMetadata(name, names, inputType, outputType, inputJavaType,
+				outputJavaType, flux);
+	}
+
+	/**
+	 * The type factory of the application's {@link ObjectMapper} (if there is exactly
+	 * one), so that the types are the same as the ones it would construct itself.
+	 */
+	private TypeFactory typeFactory() {
+		if (this.typeFactory == null) {
+			try {
+				this.typeFactory = factory.getBean(ObjectMapper.class).getTypeFactory();
 			}
-			else if (handler instanceof Consumer
-					&& !isFluxConsumer(name, (Consumer<?>) handler)) {
-				handler = (T) new FluxConsumer<Object>((Consumer<Object>) handler);
+			catch (NoSuchBeanDefinitionException e) {
+				this.typeFactory = TypeFactory.defaultInstance();
 			}
-			else if (handler instanceof Supplier
-					&& !isFluxSupplier(name, (Supplier<?>) handler)) {
-				handler = (T) new FluxSupplier<Object>((Supplier<Object>) handler);
+		}
+		return this.typeFactory;
+	}
+
+	@SuppressWarnings({ "unchecked" })
+	public <T> T handler(Object source) {
+		Object handler = handlers.get(source);
+		if (handler == null) {
+			synchronized (this) {
+				handler = handlers.get(source);
+				if (handler == null) {
+					Object target = source instanceof String
+							? factory.getBean((String) source) : source;
+					handler = wrap(source, target);
+					Map<Object, Object> targets = new HashMap<>(this.targets);
+					targets.put(source, target);
+					this.targets = Collections.unmodifiableMap(targets);
+					Map<Object, Object> handlers = new HashMap<>(this.handlers);
+					handlers.put(source, handler);
+					this.handlers = Collections.unmodifiableMap(handlers);
+				}
 			}
-			handlers.put(source, handler);
 		}
-		return (T) handlers.get(source);
+		return (T) handler;
+	}
+
+	/**
+	 * The function bean that the {@link #handler(Object) handler} for a source was
+	 * adapted from, for callers that apply it to one element at a time.
+	 *
+	 * @param source the bean name or the function bean
+	 * @return the unwrapped function
+	 */
+	@SuppressWarnings({ "unchecked" })
+	public <T> T target(Object source) {
+		Object target = targets.get(source);
+		if (target == null) {
+			handler(source);
+			target = targets.get(source);
+		}
+		return (T) target;
+	}
+
+	@SuppressWarnings({ "unchecked" })
+	private Object wrap(Object source, Object target) {
+		Object handler = target;
+		FunctionMetadata metadata = metadata(source);
+		boolean flux = metadata != null && metadata.isFlux();
+		if (handler instanceof Function && !flux) {
+			handler = new FluxFunction<Object, Object>(
+					(Function<Object, Object>) handler);
+		}
+		else if (handler instanceof Consumer && !flux) {
+			handler = new FluxConsumer<Object>((Consumer<Object>) handler);
+		}
+		else if (handler instanceof Supplier && !flux) {
+			handler = new FluxSupplier<Object>((Supplier<Object>) handler);
+		}
+		return handler;
 	}
 
-	private boolean isFluxFunction(String name, Function<?, ?> function) {
-		Boolean fluxTypes = this.hasFluxTypes(name, 2);
+	private boolean isFluxFunction(Type[] types, Function<?, ?> function) {
+		Boolean fluxTypes = this.hasFluxTypes(types, 2);
 		return (fluxTypes != null) ? fluxTypes : FunctionUtils.isFluxFunction(function);
 	}
 
-	private boolean isFluxConsumer(String name, Consumer<?> consumer) {
-		Boolean fluxTypes = this.hasFluxTypes(name, 1);
+	private boolean isFluxConsumer(Type[] types, Consumer<?> consumer) {
+		Boolean fluxTypes = this.hasFluxTypes(types, 1);
 		return (fluxTypes != null) ? fluxTypes : FunctionUtils.isFluxConsumer(consumer);
 	}
 
-	private boolean isFluxSupplier(String name, Supplier<?> supplier) {
-		Boolean fluxTypes = this.hasFluxTypes(name, 1);
+	private boolean isFluxSupplier(Type[] types, Supplier<?> supplier) {
+		Boolean fluxTypes = this.hasFluxTypes(types, 1);
 		return (fluxTypes != null) ? fluxTypes : FunctionUtils.isFluxSupplier(supplier);
 	}
 
-	private Boolean hasFluxTypes(String name, int numTypes) {
-		if (this.registry.containsBeanDefinition(name)) {
-			BeanDefinition beanDefinition = this.registry.getBeanDefinition(name);
-			Type[] types = findTypes((AbstractBeanDefinition) beanDefinition);
-			if (types != null && types.length == numTypes) {
-				String fluxClassName = Flux.class.getName();
-				for (Type t : types) {
-					if (!(t.getTypeName().startsWith(fluxClassName))) {
-						return false;
-					}
+	private Boolean hasFluxTypes(Type[] types, int numTypes) {
+		if (types != null && types.length == numTypes) {
+			String fluxClassName = Flux.class.getName();
+			for (Type t : types) {
+				if (!(t.getTypeName().startsWith(fluxClassName))) {
+					return false;
 				}
-				return true;
 			}
+			return true;
 		}
 		return null;
 	}
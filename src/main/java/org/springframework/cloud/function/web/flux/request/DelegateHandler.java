@@ -25,6 +25,8 @@ public abstract class DelegateHandler<T> {
 	private ContextFunctionPostProcessor processor;
 	private final Object source;
 	private final ConversionService conversionService;
+	private volatile FunctionMetadata metadata;
+	private volatile boolean resolved;
 
 	public DelegateHandler(ListableBeanFactory factory, Object source) {
 		this.factory = factory;
@@ -42,18 +44,50 @@ public abstract class DelegateHandler<T> {
 		}
 	}
 
+	/**
+	 * @return the bean name of the function
+	 */
+	public String getName() {
+		if (source instanceof String) {
+			return (String) source;
+		}
+		FunctionMetadata metadata = metadata();
+		return metadata == null ? source.toString() : metadata.getName();
+	}
+
 	public Object convert(String input) {
 		return conversionService.convert(input, type());
 	}
 
 	public Class<?> type() {
-		return (Class<?>) processor().findInputType(handler());
+		FunctionMetadata metadata = metadata();
+		return metadata == null ? null : metadata.getInputType();
+	}
+
+	/**
+	 * @return the precomputed metadata for the function (may be null if the function
+	 * is not known to the context)
+	 */
+	public FunctionMetadata metadata() {
+		if (!resolved) {
+			// A null result is remembered too, so the lookup is only done once
+			metadata = processor().metadata(source);
+			resolved = true;
+		}
+		return metadata;
 	}
 
 	public T handler() {
 		return processor().handler(source);
 	}
 
+	/**
+	 * @return the function bean itself, before it was adapted to {@code Flux}
+	 */
+	public <S> S target() {
+		return processor().target(source);
+	}
+
 	private ContextFunctionPostProcessor processor() {
 		if (processor == null) {
 			processor = factory.getBean(ContextFunctionPostProcessor.class);
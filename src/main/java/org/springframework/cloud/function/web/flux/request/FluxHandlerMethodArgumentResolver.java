@@ -16,20 +16,31 @@
 
 package org.springframework.cloud.function.web.flux.request;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+import org.springframework.cloud.function.web.flux.metrics.FunctionMetrics;
 import org.springframework.core.MethodParameter;
 import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.web.HttpMediaTypeNotSupportedException;
 import org.springframework.web.bind.support.WebDataBinderFactory;
 import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.method.support.ModelAndViewContainer;
 
+import reactor.core.publisher.Flux;
+
 /**
  * Converter for request bodies of type <code>Flux<String></code>.
  * 
@@ -42,10 +53,85 @@ public class FluxHandlerMethodArgumentResolver
 	public static final String HANDLER = FluxHandlerMethodArgumentResolver.class.getName()
 			+ ".HANDLER";
 
-	private final ObjectMapper mapper;
+	private final FunctionCodecs codecs;
+
+	private static final MediaType NDJSON = MediaType.valueOf("application/x-ndjson");
+
+	private final JsonArrayDecoder decoder;
+
+	private final JsonLinesDecoder lines;
+
+	private final NonBlockingJsonDecoder nonBlocking;
+
+	private BinaryDecoder binary = new BinaryDecoder(8192);
+
+	private boolean streaming = false;
+
+	private boolean nonBlockingIo = false;
+
+	private FunctionMetrics metrics;
+
+	private boolean decompression = false;
 
 	public FluxHandlerMethodArgumentResolver(ObjectMapper mapper) {
-		this.mapper = mapper;
+		this(new FunctionCodecs(mapper));
+	}
+
+	public FluxHandlerMethodArgumentResolver(FunctionCodecs codecs) {
+		this.codecs = codecs;
+		this.decoder = new JsonArrayDecoder();
+		this.lines = new JsonLinesDecoder();
+		this.nonBlocking = new NonBlockingJsonDecoder();
+	}
+
+	/**
+	 * Flag to say that request bodies should be decoded incrementally as the function
+	 * consumes them, instead of being read into memory before it is called.
+	 *
+	 * @param streaming the flag to set
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Flag to say that request bodies should be read with Servlet 3.1 non-blocking I/O
+	 * when the request is already asynchronous by the time the function consumes it
+	 * (otherwise they are read incrementally, but blocking).
+	 *
+	 * @param nonBlockingIo the flag to set
+	 */
+	public void setNonBlockingIo(boolean nonBlockingIo) {
+		this.nonBlockingIo = nonBlockingIo;
+	}
+
+	/**
+	 * Size of the chunks that the body of a request to a function of
+	 * <code>byte[]</code> or {@link java.nio.ByteBuffer} is split into.
+	 *
+	 * @param chunkSize the chunk size to set
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.binary = new BinaryDecoder(chunkSize);
+	}
+
+	/**
+	 * Flag to say that request bodies with a gzip or deflate content encoding should be
+	 * decompressed (as they are decoded, not up front).
+	 *
+	 * @param decompression the flag to set
+	 */
+	public void setDecompression(boolean decompression) {
+		this.decompression = decompression;
+	}
+
+	/**
+	 * Metrics to record decoding times in (optional).
+	 *
+	 * @param metrics the metrics to set
+	 */
+	public void setMetrics(FunctionMetrics metrics) {
+		this.metrics = metrics;
 	}
 
 	@Override
@@ -59,15 +145,114 @@ public class FluxHandlerMethodArgumentResolver
 			WebDataBinderFactory binderFactory) throws Exception {
 		DelegateHandler<?> handler = (DelegateHandler<?>) webRequest.getAttribute(HANDLER,
 				NativeWebRequest.SCOPE_REQUEST);
-		Class<?> type = handler.type();
-		if (type == null) {
-			type = Object.class;
+		FunctionMetadata metadata = handler.metadata();
+		Class<?> type = metadata == null ? null : metadata.getInputType();
+		HttpServletRequest servletRequest = webRequest
+				.getNativeRequest(HttpServletRequest.class);
+		boolean ndjson = isNdjson(webRequest);
+		boolean compressed = isCompressed(webRequest);
+		MediaType format = codecs.binaryFormat(getContentType(webRequest));
+		long start = System.nanoTime();
+		FluxRequest<Object> request;
+		if (BinaryDecoder.isBinary(type)) {
+			// Raw chunks, read on demand: nothing to decode
+			request = new FluxRequest<Object>(
+					binary.decode(getInputStream(servletRequest), type));
+		}
+		else if (format != null) {
+			// Binary JSON (e.g. Smile): always streamed, and read with blocking I/O since
+			// the splitter only understands text
+			request = new FluxRequest<Object>(decoder.decode(
+					getInputStream(servletRequest), codecs.reader(metadata, format)));
+		}
+		else if (nonBlockingIo && !compressed) {
+			ObjectReader reader = codecs.reader(metadata);
+			// Non-blocking reads need async mode, which is only decided at subscription
+			Flux<Object> flux = Flux.defer(() -> servletRequest.isAsyncStarted()
+					? nonBlocking.decode(servletRequest, reader, ndjson)
+					: decode(servletRequest, reader, ndjson));
+			request = new FluxRequest<Object>(flux);
+		}
+		else if (ndjson || streaming || nonBlockingIo) {
+			// Decoding happens as the flux is consumed, so only the setup is timed (and a
+			// compressed body is inflated as it is read, with blocking I/O)
+			request = new FluxRequest<Object>(
+					decode(servletRequest, codecs.reader(metadata), ndjson));
+		}
+		else {
+			List<Object> body = codecs.listReader(metadata)
+					.readValue(getInputStream(servletRequest));
+			if (body.contains(null)) {
+				// Rejected up front (a 400) rather than failing the flux later
+				throw new NullElementException();
+			}
+			request = new FluxRequest<Object>(body);
+		}
+		if (metrics != null) {
+			metrics.meter(handler.getName()).decoded(System.nanoTime() - start);
+		}
+		return request;
+	}
+
+	private Flux<Object> decode(HttpServletRequest request, ObjectReader reader,
+			boolean ndjson) {
+		InputStream stream;
+		try {
+			stream = getInputStream(request);
+		}
+		catch (IOException e) {
+			return Flux.error(e);
+		}
+		// Line by line for NDJSON: each line is a complete document
+		return ndjson ? lines.decode(stream, reader) : decoder.decode(stream, reader);
+	}
+
+	private InputStream getInputStream(HttpServletRequest request) throws IOException {
+		InputStream stream = request.getInputStream();
+		if (!decompression) {
+			return stream;
+		}
+		String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+		if ("gzip".equalsIgnoreCase(encoding)) {
+			return new GZIPInputStream(stream);
+		}
+		if ("deflate".equalsIgnoreCase(encoding)) {
+			return new InflaterInputStream(stream);
+		}
+		return stream;
+	}
+
+	private boolean isCompressed(NativeWebRequest webRequest)
+			throws HttpMediaTypeNotSupportedException {
+		String encoding = webRequest.getHeader(HttpHeaders.CONTENT_ENCODING);
+		if (encoding == null || "identity".equalsIgnoreCase(encoding)) {
+			return false;
+		}
+		if (decompression && ("gzip".equalsIgnoreCase(encoding)
+				|| "deflate".equalsIgnoreCase(encoding))) {
+			return true;
+		}
+		// The body cannot be decoded (rendered as a 415)
+		throw new HttpMediaTypeNotSupportedException(
+				"Unsupported Content-Encoding: " + encoding);
+	}
+
+	private boolean isNdjson(NativeWebRequest webRequest)
+			throws HttpMediaTypeNotSupportedException {
+		MediaType contentType = getContentType(webRequest);
+		return contentType != null && NDJSON.includes(contentType);
+	}
+
+	private MediaType getContentType(NativeWebRequest webRequest)
+			throws HttpMediaTypeNotSupportedException {
+		String contentType = webRequest.getHeader("Content-Type");
+		try {
+			return contentType == null ? null : MediaType.parseMediaType(contentType);
+		}
+		catch (InvalidMediaTypeException e) {
+			// Rendered as a 415
+			throw new HttpMediaTypeNotSupportedException(e.getMessage());
 		}
-		List<Object> body = mapper.readValue(
-				webRequest.getNativeRequest(HttpServletRequest.class).getInputStream(),
-				mapper.getTypeFactory().constructCollectionLikeType(ArrayList.class,
-						type));
-		return new FluxRequest<Object>(body);
 	}
 
 	@Override
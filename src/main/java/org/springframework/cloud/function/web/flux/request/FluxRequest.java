@@ -28,18 +28,34 @@ public class FluxRequest<T> {
 	
 	private List<T> body;
 
+	private Flux<T> flux;
+
 	public FluxRequest(List<T> body) {
 		this.body = body;
 	}
 
+	/**
+	 * Create a request whose body is decoded incrementally as the flux is consumed. The
+	 * flux can only be subscribed once, and there is no materialized {@link #body()}.
+	 *
+	 * @param flux the request body elements
+	 */
+	public FluxRequest(Flux<T> flux) {
+		this.flux = flux;
+	}
+
 	public Flux<T> flux() {
+		if (flux != null) {
+			return flux;
+		}
 		return Flux.fromIterable(body);
 	}
-	
+
+	/**
+	 * @return the request body elements, or null if the body is being streamed
+	 */
 	public List<T> body() {
 		return body;
 	}
-	
-}
-
 
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Jackson readers and writers for the input and output types of each function. They
+ * are created once per function and format (the first time they are used) and are
+ * immutable, so requests share them instead of looking up types and serializers every
+ * time. JSON is always supported, and other formats (e.g. Smile or CBOR) can be
+ * registered with a mapper of their own.
+ *
+ * @author Dave Syer
+ *
+ */
+public class FunctionCodecs {
+
+	public static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+
+	public static final MediaType CBOR = MediaType.valueOf("application/cbor");
+
+	private final ObjectMapper mapper;
+
+	private final Map<MediaType, Format> formats = new LinkedHashMap<>();
+
+	public FunctionCodecs(ObjectMapper mapper) {
+		this.mapper = mapper;
+		this.formats.put(MediaType.APPLICATION_JSON, new Format(mapper));
+	}
+
+	public ObjectMapper getMapper() {
+		return this.mapper;
+	}
+
+	/**
+	 * Add support for a (binary) format other than JSON. Not thread safe: it should only
+	 * be called while the application is being configured.
+	 *
+	 * @param mediaType the media type of the format
+	 * @param mapper a mapper with a factory for the format
+	 */
+	public void register(MediaType mediaType, ObjectMapper mapper) {
+		this.formats.put(mediaType, new Format(mapper));
+	}
+
+	/**
+	 * @param mediaType a media type from a request header (may be null)
+	 * @return the registered format that includes the media type, if it is not JSON,
+	 * otherwise null
+	 */
+	public MediaType binaryFormat(MediaType mediaType) {
+		if (mediaType == null) {
+			return null;
+		}
+		for (MediaType type : this.formats.keySet()) {
+			if (!MediaType.APPLICATION_JSON.equals(type) && type.includes(mediaType)) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param metadata the function metadata (may be null)
+	 * @return a reader for a single input element
+	 */
+	public ObjectReader reader(FunctionMetadata metadata) {
+		return reader(metadata, MediaType.APPLICATION_JSON);
+	}
+
+	/**
+	 * @param metadata the function metadata (may be null)
+	 * @param format one of the registered formats
+	 * @return a reader for a single input element
+	 */
+	public ObjectReader reader(FunctionMetadata metadata, MediaType format) {
+		return codec(metadata, format).reader;
+	}
+
+	/**
+	 * @param metadata the function metadata (may be null)
+	 * @return a reader for a list of input elements
+	 */
+	public ObjectReader listReader(FunctionMetadata metadata) {
+		return codec(metadata, MediaType.APPLICATION_JSON).listReader;
+	}
+
+	/**
+	 * @param metadata the function metadata (may be null)
+	 * @return a writer for a single output element, or null if the output type is not
+	 * known
+	 */
+	public ObjectWriter writer(FunctionMetadata metadata) {
+		return codec(metadata, MediaType.APPLICATION_JSON).writer;
+	}
+
+	/**
+	 * @param metadata the function metadata (may be null)
+	 * @param format one of the registered formats
+	 * @return a writer for a single output element (for any type of element if the
+	 * output type is not known)
+	 */
+	public ObjectWriter writer(FunctionMetadata metadata, MediaType format) {
+		Codec codec = codec(metadata, format);
+		return codec.writer == null ? codec.mapper.writer() : codec.writer;
+	}
+
+	private Codec codec(FunctionMetadata metadata, MediaType format) {
+		Format codecs = this.formats.get(format);
+		if (codecs == null) {
+			throw new IllegalArgumentException("Unsupported format: " + format);
+		}
+		if (metadata == null) {
+			return codecs.defaults;
+		}
+		return codecs.codecs.computeIfAbsent(metadata.getName(),
+				name -> new Codec(codecs.mapper, metadata.getInputJavaType(),
+						metadata.getOutputJavaType()));
+	}
+
+	private static class Format {
+
+		private final ObjectMapper mapper;
+
+		private final Codec defaults;
+
+		private final Map<String, Codec> codecs = new ConcurrentHashMap<>();
+
+		Format(ObjectMapper mapper) {
+			this.mapper = mapper;
+			this.defaults = new Codec(mapper, null, null);
+		}
+
+	}
+
+	private static class Codec {
+
+		private final ObjectMapper mapper;
+
+		private final ObjectReader reader;
+
+		private final ObjectReader listReader;
+
+		private final ObjectWriter writer;
+
+		Codec(ObjectMapper mapper, JavaType input, JavaType output) {
+			this.mapper = mapper;
+			if (input == null) {
+				input = mapper.getTypeFactory().constructType(Object.class);
+			}
+			this.reader = mapper.readerFor(input);
+			this.listReader = mapper.readerFor(mapper.getTypeFactory()
+					.constructCollectionLikeType(ArrayList.class, input));
+			this.writer = output == null ? null : mapper.writerFor(output);
+		}
+
+	}
+
+}
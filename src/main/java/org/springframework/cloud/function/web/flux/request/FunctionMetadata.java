@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.util.Arrays;
+
+import com.fasterxml.jackson.databind.JavaType;
+
+/**
+ * Immutable description of a function bean, computed once when the application context
+ * starts so that nothing needs to be introspected when a request is handled.
+ *
+ * @author Dave Syer
+ *
+ */
+public class FunctionMetadata {
+
+	private final String name;
+
+	private final String[] names;
+
+	private final Class<?> inputType;
+
+	private final Class<?> outputType;
+
+	private final JavaType inputJavaType;
+
+	private final JavaType outputJavaType;
+
+	private final boolean flux;
+
+	public FunctionMetadata(String name, String[] names, Class<?> inputType,
+			Class<?> outputType, JavaType inputJavaType, JavaType outputJavaType,
+			boolean flux) {
+		this.name = name;
+		this.names = names;
+		this.inputType = inputType;
+		this.outputType = outputType;
+		this.inputJavaType = inputJavaType;
+		this.outputJavaType = outputJavaType;
+		this.flux = flux;
+	}
+
+	/**
+	 * @return the bean name of the function
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return the bean name of the function and all its aliases
+	 */
+	public String[] getNames() {
+		return this.names.clone();
+	}
+
+	/**
+	 * @return the type of the elements accepted by the function (may be null)
+	 */
+	public Class<?> getInputType() {
+		return this.inputType;
+	}
+
+	/**
+	 * @return the type of the elements produced by the function (may be null)
+	 */
+	public Class<?> getOutputType() {
+		return this.outputType;
+	}
+
+	/**
+	 * @return the full generic type of the input elements, for decoding (may be null)
+	 */
+	public JavaType getInputJavaType() {
+		return this.inputJavaType;
+	}
+
+	/**
+	 * @return the full generic type of the output elements, for encoding (may be null)
+	 */
+	public JavaType getOutputJavaType() {
+		return this.outputJavaType;
+	}
+
+	/**
+	 * @return true if the function already consumes and produces {@code Flux} so it
+	 * does not need to be adapted
+	 */
+	public boolean isFlux() {
+		return this.flux;
+	}
+
+	@Override
+	public String toString() {
+		return "FunctionMetadata [name=" + this.name + ", names="
+				+ Arrays.asList(this.names) + ", inputType=" + this.inputType
+				+ ", outputType=" + this.outputType + ", flux=" + this.flux + "]";
+	}
+
+}
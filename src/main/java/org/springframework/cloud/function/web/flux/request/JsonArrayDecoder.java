@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+/**
+ * Incremental decoder for a JSON request body. Drives a {@link JsonParser} over the
+ * input stream and emits each element of a top level array as soon as it has been
+ * parsed, and only when there is demand for it downstream. A body that is not an array
+ * is emitted as a single element. A <code>null</code> element is not dropped: the flux
+ * fails with a {@link NullElementException}.
+ *
+ * @author Dave Syer
+ *
+ */
+class JsonArrayDecoder {
+
+	public <T> Flux<T> decode(InputStream stream, ObjectReader reader) {
+		return Flux.<T, State>generate(
+				() -> new State(reader.getFactory().createParser(stream)),
+				(state, sink) -> next(state, reader, sink), state -> state.close());
+	}
+
+	private <T> State next(State state, ObjectReader reader, SynchronousSink<T> sink) {
+		try {
+			JsonToken token = state.parser.nextToken();
+			if (!state.started) {
+				state.started = true;
+				state.array = token == JsonToken.START_ARRAY;
+				if (state.array) {
+					token = state.parser.nextToken();
+				}
+			}
+			else if (!state.array) {
+				// A single value has already been emitted
+				token = null;
+			}
+			if (token == null || token == JsonToken.END_ARRAY) {
+				sink.complete();
+				return state;
+			}
+			T value = reader.readValue(state.parser);
+			if (value == null) {
+				sink.error(new NullElementException());
+				return state;
+			}
+			sink.next(value);
+		}
+		catch (IOException e) {
+			sink.error(e);
+		}
+		return state;
+	}
+
+	private static class State {
+
+		private final JsonParser parser;
+
+		private boolean started;
+
+		private boolean array;
+
+		public State(JsonParser parser) {
+			this.parser = parser;
+		}
+
+		public void close() {
+			try {
+				parser.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+/**
+ * Incremental decoder for a newline delimited JSON (<code>application/x-ndjson</code>)
+ * request body. Each non-blank line is a complete JSON document, and is parsed and
+ * emitted only when there is demand for it downstream. A line that is a JSON
+ * <code>null</code> fails the flux with a {@link NullElementException}.
+ *
+ * @author Dave Syer
+ *
+ */
+class JsonLinesDecoder {
+
+	public <T> Flux<T> decode(InputStream stream, ObjectReader reader) {
+		return Flux.<T, BufferedReader>generate(
+				() -> new BufferedReader(
+						new InputStreamReader(stream, StandardCharsets.UTF_8)),
+				(lines, sink) -> next(lines, reader, sink), lines -> close(lines));
+	}
+
+	private <T> BufferedReader next(BufferedReader lines, ObjectReader reader,
+			SynchronousSink<T> sink) {
+		try {
+			String line = lines.readLine();
+			while (line != null && line.trim().isEmpty()) {
+				line = lines.readLine();
+			}
+			if (line == null) {
+				sink.complete();
+				return lines;
+			}
+			T value = reader.readValue(line);
+			if (value == null) {
+				sink.error(new NullElementException());
+				return lines;
+			}
+			sink.next(value);
+		}
+		catch (IOException e) {
+			sink.error(e);
+		}
+		return lines;
+	}
+
+	private void close(BufferedReader lines) {
+		try {
+			lines.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a JSON request body that arrives in arbitrary chunks into the byte ranges of
+ * its individual elements, so that each one can be decoded as soon as it is complete
+ * without blocking for the rest of the body. A top level array is split into its
+ * elements, and anything else is a single element. In line mode (for newline delimited
+ * JSON) each non-blank line is an element. Not thread safe: a splitter is fed by one
+ * request.
+ *
+ * @author Dave Syer
+ *
+ */
+class JsonSplitter {
+
+	private final boolean lines;
+
+	private final ByteArrayOutputStream current = new ByteArrayOutputStream(256);
+
+	private boolean started;
+
+	private boolean array;
+
+	private boolean done;
+
+	private int depth;
+
+	private boolean string;
+
+	private boolean escape;
+
+	public JsonSplitter(boolean lines) {
+		this.lines = lines;
+	}
+
+	/**
+	 * @param bytes a buffer containing the next chunk of the body
+	 * @param length the number of bytes in the buffer that are part of the body
+	 * @return the elements that were completed by this chunk (possibly empty)
+	 */
+	public List<byte[]> split(byte[] bytes, int length) {
+		List<byte[]> result = new ArrayList<>();
+		for (int i = 0; i < length && !this.done; i++) {
+			byte b = bytes[i];
+			if (this.lines) {
+				if (b == '\n') {
+					emit(result);
+				}
+				else {
+					this.current.write(b);
+				}
+			}
+			else if (!this.started) {
+				if (!isWhitespace(b)) {
+					this.started = true;
+					this.array = b == '[';
+					if (!this.array) {
+						this.current.write(b);
+						track(b);
+					}
+				}
+			}
+			else if (!this.array) {
+				this.current.write(b);
+			}
+			else {
+				next(b, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the last element, if the body ended without an explicit delimiter
+	 * (possibly empty)
+	 */
+	public List<byte[]> finish() {
+		List<byte[]> result = new ArrayList<>();
+		if (!this.array || this.lines) {
+			emit(result);
+		}
+		return result;
+	}
+
+	private void next(byte b, List<byte[]> result) {
+		if (this.string) {
+			this.current.write(b);
+			track(b);
+			return;
+		}
+		if (b == ',' && this.depth == 0) {
+			emit(result);
+			return;
+		}
+		if (b == ']' && this.depth == 0) {
+			// The end of the top level array
+			emit(result);
+			this.done = true;
+			return;
+		}
+		if (this.current.size() > 0 || !isWhitespace(b)) {
+			this.current.write(b);
+		}
+		track(b);
+	}
+
+	private void track(byte b) {
+		if (this.string) {
+			if (this.escape) {
+				this.escape = false;
+			}
+			else if (b == '\\') {
+				this.escape = true;
+			}
+			else if (b == '"') {
+				this.string = false;
+			}
+		}
+		else if (b == '"') {
+			this.string = true;
+		}
+		else if (b == '{' || b == '[') {
+			this.depth++;
+		}
+		else if (b == '}' || b == ']') {
+			this.depth--;
+		}
+	}
+
+	private void emit(List<byte[]> result) {
+		byte[] bytes = this.current.toByteArray();
+		this.current.reset();
+		for (byte b : bytes) {
+			if (!isWhitespace(b)) {
+				result.add(bytes);
+				return;
+			}
+		}
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+
+}
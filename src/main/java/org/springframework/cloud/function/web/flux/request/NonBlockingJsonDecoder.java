@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Decoder for a JSON (or newline delimited JSON) request body that uses Servlet 3.1
+ * non-blocking I/O. Bytes are only read when the container says they are available,
+ * split into elements with a {@link JsonSplitter}, and each element is emitted as soon
+ * as it is complete, so no thread waits on a slow client. Reading stops while there is
+ * no demand downstream (so a slow consumer pushes back on the client) and resumes when
+ * more is requested. The request has to be in async mode by the time the flux is
+ * subscribed to. A <code>null</code> element fails the flux with a
+ * {@link NullElementException}.
+ *
+ * @author Dave Syer
+ *
+ */
+class NonBlockingJsonDecoder {
+
+	public <T> Flux<T> decode(HttpServletRequest request, ObjectReader reader,
+			boolean lines) {
+		return Flux.<T>create(sink -> {
+			try {
+				ServletInputStream input = request.getInputStream();
+				Listener<T> listener = new Listener<T>(input, reader,
+						new JsonSplitter(lines), sink);
+				input.setReadListener(listener);
+				sink.onCancel(listener::cancel);
+				sink.onRequest(demand -> listener.drain());
+			}
+			catch (IOException e) {
+				sink.error(e);
+			}
+		});
+	}
+
+	private static class Listener<T> implements ReadListener {
+
+		private final ServletInputStream input;
+
+		private final ObjectReader reader;
+
+		private final JsonSplitter splitter;
+
+		private final FluxSink<T> sink;
+
+		private final byte[] buffer = new byte[4096];
+
+		/**
+		 * Elements that have been read but not emitted yet, for lack of demand.
+		 */
+		private final Queue<byte[]> pending = new ArrayDeque<>();
+
+		private boolean allRead;
+
+		private boolean done;
+
+		private boolean draining;
+
+		public Listener(ServletInputStream input, ObjectReader reader,
+				JsonSplitter splitter, FluxSink<T> sink) {
+			this.input = input;
+			this.reader = reader;
+			this.splitter = splitter;
+			this.sink = sink;
+		}
+
+		@Override
+		public void onDataAvailable() throws IOException {
+			drain();
+		}
+
+		@Override
+		public synchronized void onAllDataRead() throws IOException {
+			this.pending.addAll(this.splitter.finish());
+			this.allRead = true;
+			drain();
+		}
+
+		@Override
+		public synchronized void onError(Throwable t) {
+			if (!this.done) {
+				this.done = true;
+				this.pending.clear();
+				this.sink.error(t);
+			}
+		}
+
+		public synchronized void cancel() {
+			this.done = true;
+			this.pending.clear();
+		}
+
+		/**
+		 * Emit pending elements and read more while there is demand. Returns without
+		 * reading when there is none (to be called again when more is requested) or when
+		 * the input is not ready (the container calls back when it is).
+		 */
+		public synchronized void drain() {
+			if (this.draining) {
+				// Called back from downstream while emitting: the loop below carries on
+				return;
+			}
+			this.draining = true;
+			try {
+				while (!this.done) {
+					if (this.sink.isCancelled()) {
+						cancel();
+						return;
+					}
+					if (!this.pending.isEmpty()) {
+						if (this.sink.requestedFromDownstream() <= 0) {
+							return;
+						}
+						T value = this.reader.readValue(this.pending.poll());
+						if (value == null) {
+							throw new NullElementException();
+						}
+						this.sink.next(value);
+						continue;
+					}
+					if (this.allRead) {
+						this.done = true;
+						this.sink.complete();
+						return;
+					}
+					if (this.sink.requestedFromDownstream() <= 0
+							|| !this.input.isReady()) {
+						return;
+					}
+					int count = this.input.read(this.buffer);
+					if (count < 0 && !this.allRead) {
+						// The container calls onAllDataRead() next
+						return;
+					}
+					if (count > 0) {
+						this.pending.addAll(this.splitter.split(this.buffer, count));
+					}
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				onError(e);
+			}
+			finally {
+				this.draining = false;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * A JSON <code>null</code> element in a request body. A reactive stream cannot carry it,
+ * and dropping it would change what the function sees, so the body is rejected instead
+ * (with a 400 if the response has not been started).
+ *
+ * @author Dave Syer
+ *
+ */
+@SuppressWarnings("serial")
+public class NullElementException extends HttpMessageNotReadableException {
+
+	public NullElementException() {
+		super("Null elements are not supported in a request body");
+	}
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import org.springframework.cloud.function.web.flux.metrics.FunctionMeter;
+import org.springframework.cloud.function.web.flux.response.OverflowPolicy.Strategy;
+
+/**
+ * Decouples one client from its source: requests everything from the source, holds at
+ * most a fixed number of elements for the client, and applies an
+ * {@link OverflowPolicy} when the client falls behind, instead of letting the backlog
+ * (or the source) grow. Elements are handed on in order, as the client asks for them.
+ *
+ * @author Dave Syer
+ *
+ */
+class BoundedBuffer<T> implements Publisher<T> {
+
+	private final Publisher<T> source;
+
+	private final OverflowPolicy policy;
+
+	private final FunctionMeter meter;
+
+	public BoundedBuffer(Publisher<T> source, OverflowPolicy policy, FunctionMeter meter) {
+		this.source = source;
+		this.policy = policy;
+		this.meter = meter;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super T> subscriber) {
+		this.source.subscribe(new Inner<T>(subscriber, this.policy, this.meter));
+	}
+
+	private static class Inner<T> implements Subscriber<T>, Subscription {
+
+		private final Subscriber<? super T> actual;
+
+		private final OverflowPolicy policy;
+
+		private final FunctionMeter meter;
+
+		private final Queue<T> queue = new ArrayDeque<>();
+
+		private final AtomicLong requested = new AtomicLong();
+
+		private final AtomicInteger wip = new AtomicInteger();
+
+		private volatile Subscription upstream;
+
+		private volatile boolean done;
+
+		private volatile boolean cancelled;
+
+		private Throwable error;
+
+		public Inner(Subscriber<? super T> actual, OverflowPolicy policy,
+				FunctionMeter meter) {
+			this.actual = actual;
+			this.policy = policy;
+			this.meter = meter;
+		}
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.upstream = subscription;
+			this.actual.onSubscribe(this);
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(T value) {
+			if (this.done) {
+				return;
+			}
+			synchronized (this.queue) {
+				if (this.queue.size() >= this.policy.getBufferSize()) {
+					if (!overflow()) {
+						return;
+					}
+				}
+				this.queue.offer(value);
+			}
+			drain();
+		}
+
+		private boolean overflow() {
+			Strategy strategy = this.policy.getStrategy();
+			if (strategy == Strategy.DROP_OLDEST) {
+				this.queue.poll();
+				if (this.meter != null) {
+					this.meter.dropped(1);
+				}
+				return true;
+			}
+			if (strategy == Strategy.LATEST) {
+				int count = this.queue.size();
+				this.queue.clear();
+				if (this.meter != null) {
+					this.meter.conflated(count);
+				}
+				return true;
+			}
+			// Too slow: give up on this client
+			this.queue.clear();
+			this.upstream.cancel();
+			if (this.meter != null) {
+				this.meter.disconnected();
+			}
+			this.error = new IllegalStateException(
+					"Client too slow: more than " + this.policy.getBufferSize()
+							+ " elements buffered");
+			this.done = true;
+			drain();
+			return false;
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			if (this.done) {
+				return;
+			}
+			this.error = error;
+			this.done = true;
+			drain();
+		}
+
+		@Override
+		public void onComplete() {
+			if (this.done) {
+				return;
+			}
+			this.done = true;
+			drain();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				return;
+			}
+			long current;
+			long next;
+			do {
+				current = this.requested.get();
+				next = current + n;
+				if (next < 0) {
+					next = Long.MAX_VALUE;
+				}
+			}
+			while (!this.requested.compareAndSet(current, next));
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			this.cancelled = true;
+			this.upstream.cancel();
+		}
+
+		private void drain() {
+			if (this.wip.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			while (true) {
+				while (!this.cancelled && this.requested.get() > 0) {
+					T value;
+					synchronized (this.queue) {
+						value = this.queue.poll();
+					}
+					if (value == null) {
+						break;
+					}
+					this.requested.decrementAndGet();
+					this.actual.onNext(value);
+				}
+				if (this.cancelled) {
+					return;
+				}
+				boolean empty;
+				synchronized (this.queue) {
+					empty = this.queue.isEmpty();
+				}
+				if (this.done && empty) {
+					this.cancelled = true;
+					if (this.error != null) {
+						this.actual.onError(this.error);
+					}
+					else {
+						this.actual.onComplete();
+					}
+					return;
+				}
+				missed = this.wip.addAndGet(-missed);
+				if (missed == 0) {
+					return;
+				}
+			}
+		}
+
+	}
+
+}
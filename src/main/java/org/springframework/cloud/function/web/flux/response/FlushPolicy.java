@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+/**
+ * Thresholds that decide when buffered response frames are flushed to the client:
+ * either when the buffer holds at least {@link #getBufferSize() bufferSize} bytes, or
+ * when the oldest buffered frame has waited {@link #getMaxLatency() maxLatency}
+ * milliseconds, whichever comes first. A max latency of zero (or less) flushes every
+ * frame as soon as it is written.
+ *
+ * @author Dave Syer
+ *
+ */
+public class FlushPolicy {
+
+	/**
+	 * A policy that does not buffer at all.
+	 */
+	public static final FlushPolicy IMMEDIATE = new FlushPolicy(0, 0L);
+
+	/**
+	 * The default policy for buffered responses: 8KB or 50ms.
+	 */
+	public static final FlushPolicy DEFAULT = new FlushPolicy(8192, 50L);
+
+	private final int bufferSize;
+
+	private final long maxLatency;
+
+	public FlushPolicy(int bufferSize, long maxLatency) {
+		this.bufferSize = bufferSize;
+		this.maxLatency = maxLatency;
+	}
+
+	public int getBufferSize() {
+		return this.bufferSize;
+	}
+
+	public long getMaxLatency() {
+		return this.maxLatency;
+	}
+
+	public boolean isImmediate() {
+		return this.maxLatency <= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "FlushPolicy [bufferSize=" + this.bufferSize + ", maxLatency="
+				+ this.maxLatency + "]";
+	}
+
+}
@@ -16,8 +16,6 @@
 
 package org.springframework.cloud.function.web.flux.response;
 
-import org.reactivestreams.Publisher;
-
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.server.ServerHttpResponse;
@@ -30,19 +28,17 @@ import reactor.core.publisher.Flux;
  *
  * @author Dave Syer
  */
-class FluxResponseBodyEmitter<T> extends ResponseBodyEmitter {
+class FluxResponseBodyEmitter extends ResponseBodyEmitter {
 
 	private final MediaType mediaType;
 
-	public FluxResponseBodyEmitter(Publisher<T> observable) {
-		this(null, observable);
+	public FluxResponseBodyEmitter() {
+		this(null);
 	}
 
-	public FluxResponseBodyEmitter(MediaType mediaType, Publisher<T> observable) {
+	public FluxResponseBodyEmitter(MediaType mediaType) {
 		super();
 		this.mediaType = mediaType;
-		new ResponseBodyEmitterSubscriber<>(mediaType, observable, this,
-				MediaType.APPLICATION_JSON.isCompatibleWith(mediaType));
 	}
 
 	@Override
@@ -16,18 +16,36 @@
 
 package org.springframework.cloud.function.web.flux.response;
 
-import java.time.Duration;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.reactivestreams.Publisher;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.function.web.flux.metrics.FunctionMeter;
+import org.springframework.cloud.function.web.flux.metrics.FunctionMetrics;
+import org.springframework.cloud.function.web.flux.request.BinaryDecoder;
+import org.springframework.cloud.function.web.flux.request.DelegateHandler;
+import org.springframework.cloud.function.web.flux.request.FluxHandlerMethodArgumentResolver;
+import org.springframework.cloud.function.web.flux.request.FunctionCodecs;
+import org.springframework.cloud.function.web.flux.request.FunctionMetadata;
+import org.springframework.cloud.function.web.flux.response.ResponseBodyWriter.Format;
 import org.springframework.core.MethodParameter;
 import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StringUtils;
 import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.method.support.AsyncHandlerMethodReturnValueHandler;
 import org.springframework.web.method.support.ModelAndViewContainer;
@@ -36,6 +54,7 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * A specialized {@link AsyncHandlerMethodReturnValueHandler} that handles {@link Flux}
@@ -43,14 +62,46 @@ import reactor.core.publisher.Mono;
  *
  * @author Dave Syer
  */
-public class FluxReturnValueHandler implements AsyncHandlerMethodReturnValueHandler {
+public class FluxReturnValueHandler
+		implements AsyncHandlerMethodReturnValueHandler, DisposableBean {
 
 	private ResponseBodyEmitterReturnValueHandler delegate;
+	private List<HttpMessageConverter<?>> messageConverters;
 	private long timeout = 1000L;
+	private int batchSize = 32;
+	private FlushPolicy jsonFlushPolicy = FlushPolicy.DEFAULT;
+	private FlushPolicy sseFlushPolicy = FlushPolicy.IMMEDIATE;
+	private FlushPolicy ndjsonFlushPolicy = FlushPolicy.DEFAULT;
+	private FlushPolicy plainFlushPolicy = FlushPolicy.DEFAULT;
+	private final ScheduledExecutorService timer;
+	private final IdleTimer idleTimer;
+	private final ExecutorService callbacks;
+	private Map<String, Long> timeouts = Collections.emptyMap();
+	private Map<String, Long> heartbeats = Collections.emptyMap();
+	private FunctionMetrics metrics;
+	private FunctionCodecs codecs;
+	private boolean nonBlockingIo = false;
+	private boolean compression = false;
+	private int compressionMinSize = 2048;
+	private boolean escapeStrings = false;
+	private Map<String, OverflowPolicy> overflowPolicies = Collections.emptyMap();
 	private static final MediaType EVENT_STREAM = MediaType.valueOf("text/event-stream");
+	private static final MediaType NDJSON = MediaType.valueOf("application/x-ndjson");
 
 	public FluxReturnValueHandler(List<HttpMessageConverter<?>> messageConverters) {
+		this.messageConverters = messageConverters;
 		delegate = new ResponseBodyEmitterReturnValueHandler(messageConverters);
+		CustomizableThreadFactory threads = new CustomizableThreadFactory(
+				"function-flush-");
+		threads.setDaemon(true);
+		timer = Executors.newSingleThreadScheduledExecutor(threads);
+		idleTimer = new IdleTimer(100L, 512);
+		// Idle and heartbeat events are handled here, so a slow client cannot hold up
+		// the timer (which watches all the streams)
+		CustomizableThreadFactory streams = new CustomizableThreadFactory(
+				"function-stream-");
+		streams.setDaemon(true);
+		callbacks = Executors.newCachedThreadPool(streams);
 	}
 
 	/**
@@ -63,6 +114,153 @@ public class FluxReturnValueHandler implements AsyncHandlerMethodReturnValueHand
 		this.timeout = timeout;
 	}
 
+	/**
+	 * Per-function overrides for the {@link #setTimeout(long) timeout} (0 for none).
+	 *
+	 * @param timeouts the timeouts to set in milliseconds, keyed by function name
+	 */
+	public void setTimeouts(Map<String, Long> timeouts) {
+		this.timeouts = timeouts;
+	}
+
+	/**
+	 * Per-function intervals for sending a comment on a server sent event stream that
+	 * has nothing else to send, to stop proxies and clients from dropping it.
+	 *
+	 * @param heartbeats the intervals to set in milliseconds, keyed by function name
+	 */
+	public void setHeartbeats(Map<String, Long> heartbeats) {
+		this.heartbeats = heartbeats;
+	}
+
+	/**
+	 * Number of elements to request from a response publisher at a time. The next batch
+	 * is only requested when the previous one has been written to the response, so this
+	 * bounds the number of elements buffered in memory for a slow client.
+	 *
+	 * @param batchSize the batch size to set (at least 1)
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException(
+					"Batch size must be at least 1 (was " + batchSize + ")");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Flush policy for responses rendered as a JSON array.
+	 *
+	 * @param jsonFlushPolicy the policy to set
+	 */
+	public void setJsonFlushPolicy(FlushPolicy jsonFlushPolicy) {
+		this.jsonFlushPolicy = jsonFlushPolicy;
+	}
+
+	/**
+	 * Flush policy for responses rendered as server sent events.
+	 *
+	 * @param sseFlushPolicy the policy to set
+	 */
+	public void setSseFlushPolicy(FlushPolicy sseFlushPolicy) {
+		this.sseFlushPolicy = sseFlushPolicy;
+	}
+
+	/**
+	 * Flush policy for responses rendered as newline delimited JSON.
+	 *
+	 * @param ndjsonFlushPolicy the policy to set
+	 */
+	public void setNdjsonFlushPolicy(FlushPolicy ndjsonFlushPolicy) {
+		this.ndjsonFlushPolicy = ndjsonFlushPolicy;
+	}
+
+	/**
+	 * Flush policy for responses with any other media type.
+	 *
+	 * @param plainFlushPolicy the policy to set
+	 */
+	public void setPlainFlushPolicy(FlushPolicy plainFlushPolicy) {
+		this.plainFlushPolicy = plainFlushPolicy;
+	}
+
+	/**
+	 * Flag to say that string elements of JSON and NDJSON responses should be quoted
+	 * and escaped, instead of passed through if they already contain a quote.
+	 *
+	 * @param escapeStrings the flag to set
+	 */
+	public void setEscapeStrings(boolean escapeStrings) {
+		this.escapeStrings = escapeStrings;
+	}
+
+	/**
+	 * Metrics to record response streams in (optional).
+	 *
+	 * @param metrics the metrics to set
+	 */
+	public void setMetrics(FunctionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Precomputed Jackson writers for the output types of functions (optional). Without
+	 * them every element is written with a message converter.
+	 *
+	 * @param codecs the codecs to set
+	 */
+	public void setCodecs(FunctionCodecs codecs) {
+		this.codecs = codecs;
+	}
+
+	/**
+	 * Flag to say that responses should be written with Servlet 3.1 non-blocking I/O,
+	 * so that a slow client does not hold on to a thread.
+	 *
+	 * @param nonBlockingIo the flag to set
+	 */
+	public void setNonBlockingIo(boolean nonBlockingIo) {
+		this.nonBlockingIo = nonBlockingIo;
+	}
+
+	/**
+	 * Flag to say that responses should be gzipped for clients that accept it. Each
+	 * flushed block is sync-flushed, so streams are not held back by the compression.
+	 *
+	 * @param compression the flag to set
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Flushed blocks smaller than this (in bytes) are stored in the gzip stream instead
+	 * of being compressed.
+	 *
+	 * @param compressionMinSize the minimum size to set
+	 */
+	public void setCompressionMinSize(int compressionMinSize) {
+		this.compressionMinSize = compressionMinSize;
+	}
+
+	/**
+	 * Per-function limits on the number of elements buffered for each client of a
+	 * streamed (server sent events or newline delimited JSON) response. A function
+	 * without an entry applies backpressure to its source instead.
+	 *
+	 * @param overflowPolicies the policies to set, keyed by function name
+	 */
+	public void setOverflowPolicies(Map<String, OverflowPolicy> overflowPolicies) {
+		this.overflowPolicies = overflowPolicies;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		timer.shutdownNow();
+		idleTimer.stop();
+		callbacks.shutdownNow();
+	}
+
 	@Override
 	public boolean isAsyncReturnValue(Object returnValue, MethodParameter returnType) {
 		if (returnValue != null) {
@@ -112,7 +310,15 @@ public class FluxReturnValueHandler implements AsyncHandlerMethodReturnValueHand
 		if (webRequest.getHeader("Accept") != null) {
 			for (MediaType type : MediaType
 					.parseMediaTypes(webRequest.getHeader("Accept"))) {
-				if (!MediaType.ALL.equals(type)
+				if (codecs != null && codecs.binaryFormat(type) != null) {
+					mediaType = codecs.binaryFormat(type);
+					break;
+				}
+				else if (NDJSON.includes(type)) {
+					mediaType = NDJSON;
+					break;
+				}
+				else if (!MediaType.ALL.equals(type)
 						&& MediaType.APPLICATION_JSON.isCompatibleWith(type)) {
 					mediaType = MediaType.APPLICATION_JSON;
 					break;
@@ -121,20 +327,158 @@ public class FluxReturnValueHandler implements AsyncHandlerMethodReturnValueHand
 				}
 			}
 		}
-		delegate.handleReturnValue(getEmitter(timeout, flux, mediaType), returnType,
-				mavContainer, webRequest);
+		DelegateHandler<?> handler = getHandler(webRequest);
+		String name = handler == null ? null : handler.getName();
+		if (isBinary(handler) && (mediaType == null
+				|| MediaType.APPLICATION_OCTET_STREAM.isCompatibleWith(mediaType))) {
+			mediaType = MediaType.APPLICATION_OCTET_STREAM;
+		}
+		FunctionMeter meter = metrics == null || name == null ? null
+				: metrics.meter(name);
+		OverflowPolicy overflow = name == null ? null : overflowPolicies.get(name);
+		ResponseBodyEmitterSubscriber<?> subscriber = getSubscriber(flux, mediaType,
+				meter, overflow);
+		FunctionMetadata metadata = handler == null ? null : handler.metadata();
+		if (codecs != null) {
+			MediaType format = codecs.binaryFormat(mediaType);
+			Class<?> outputType = metadata == null ? null : metadata.getOutputType();
+			subscriber.getWriter().setObjectWriter(format == null
+					? codecs.writer(metadata) : codecs.writer(metadata, format),
+					outputType);
+		}
+		if (compression && !MediaType.APPLICATION_OCTET_STREAM.equals(mediaType)
+				&& acceptsGzip(webRequest)) {
+			// Has to be decided before the emitter commits the headers
+			HttpServletResponse response = webRequest
+					.getNativeResponse(HttpServletResponse.class);
+			response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+			response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			subscriber.getWriter().setEncoder(new GzipEncoder(compressionMinSize));
+		}
+		if (!(flux instanceof Mono)) {
+			Long idle = name == null ? null : timeouts.get(name);
+			Long heartbeat = name == null ? null : heartbeats.get(name);
+			subscriber.setIdleTimeout(idleTimer, callbacks,
+					idle == null ? timeout : idle, heartbeat == null ? 0 : heartbeat);
+		}
+		delegate.handleReturnValue(subscriber.getEmitter(), returnType, mavContainer,
+				webRequest);
+		// The emitter is now attached to the response so writes are not buffered
+		if (nonBlockingIo) {
+			NonBlockingOutput output = getOutput(webRequest);
+			if (output != null) {
+				subscriber.getWriter().setOutput(output);
+			}
+		}
+		subscriber.start();
+	}
+
+	private boolean acceptsGzip(NativeWebRequest webRequest) {
+		String[] values = webRequest.getHeaderValues(HttpHeaders.ACCEPT_ENCODING);
+		if (values != null) {
+			for (String value : values) {
+				for (String coding : StringUtils.commaDelimitedListToStringArray(value)) {
+					String[] parts = coding.split(";");
+					boolean refused = parts.length > 1
+							&& parts[1].trim().matches("q=0(\\.0*)?");
+					if ("gzip".equalsIgnoreCase(parts[0].trim()) && !refused) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private NonBlockingOutput getOutput(NativeWebRequest webRequest) throws IOException {
+		HttpServletRequest request = webRequest
+				.getNativeRequest(HttpServletRequest.class);
+		HttpServletResponse response = webRequest
+				.getNativeResponse(HttpServletResponse.class);
+		if (request == null || response == null || !request.isAsyncStarted()) {
+			return null;
+		}
+		try {
+			return new NonBlockingOutput(response.getOutputStream());
+		}
+		catch (IllegalStateException | UnsupportedOperationException e) {
+			// Probably a wrapped response that does not support it
+			return null;
+		}
+	}
+
+	private DelegateHandler<?> getHandler(NativeWebRequest webRequest) {
+		Object handler = webRequest.getAttribute(
+				FluxHandlerMethodArgumentResolver.HANDLER, NativeWebRequest.SCOPE_REQUEST);
+		return handler instanceof DelegateHandler ? (DelegateHandler<?>) handler : null;
+	}
+
+	private boolean isBinary(DelegateHandler<?> handler) {
+		FunctionMetadata metadata = handler == null ? null : handler.metadata();
+		return metadata != null && BinaryDecoder.isBinary(metadata.getOutputType());
 	}
 
-	private ResponseBodyEmitter getEmitter(Long timeout, Publisher<?> flux,
-			MediaType mediaType) {
-		Publisher<?> exported = flux instanceof Mono ? Mono.from(flux)
-				: Flux.from(flux).timeout(Duration.ofMillis(timeout), Flux.empty());
+	private ResponseBodyEmitterSubscriber<?> getSubscriber(Publisher<?> flux,
+			MediaType mediaType, FunctionMeter meter, OverflowPolicy overflow) {
+		boolean single = flux instanceof Mono;
+		Publisher<?> exported = single ? Mono.from(flux) : Flux.from(flux);
 		if (!MediaType.ALL.equals(mediaType)
 				&& EVENT_STREAM.isCompatibleWith(mediaType)) {
 			// TODO: more subtle content negotiation
-			return new FluxResponseSseEmitter<>(MediaType.APPLICATION_JSON, exported);
+			if (!single && overflow != null) {
+				exported = bounded(exported, overflow, meter);
+			}
+			// The writer frames the events, so a plain emitter is enough
+			return subscriber(exported, new FluxResponseBodyEmitter(EVENT_STREAM),
+					MediaType.APPLICATION_JSON, Format.SSE, single, sseFlushPolicy,
+					meter);
+		}
+		if (NDJSON.equals(mediaType)) {
+			// Elements are rendered as JSON, with the stream media type on the response
+			FluxResponseBodyEmitter emitter = new FluxResponseBodyEmitter(NDJSON);
+			if (!single && overflow != null) {
+				exported = bounded(exported, overflow, meter);
+			}
+			return subscriber(exported, emitter, MediaType.APPLICATION_JSON,
+					Format.NDJSON, false, ndjsonFlushPolicy, meter);
+		}
+		if (codecs != null && codecs.binaryFormat(mediaType) != null) {
+			// Smile or CBOR: the generator frames the elements
+			return subscriber(exported, new FluxResponseBodyEmitter(mediaType),
+					mediaType, Format.JACKSON, single, jsonFlushPolicy, meter);
+		}
+		if (MediaType.APPLICATION_OCTET_STREAM.equals(mediaType)) {
+			return subscriber(exported, new FluxResponseBodyEmitter(mediaType),
+					mediaType, Format.BINARY, single, FlushPolicy.IMMEDIATE, meter);
 		}
-		return new FluxResponseBodyEmitter<>(mediaType, exported);
+		if (MediaType.APPLICATION_JSON.isCompatibleWith(mediaType)) {
+			return subscriber(exported, new FluxResponseBodyEmitter(mediaType),
+					mediaType, Format.JSON, single, jsonFlushPolicy, meter);
+		}
+		return subscriber(exported, new FluxResponseBodyEmitter(mediaType), mediaType,
+				Format.PLAIN, single, plainFlushPolicy, meter);
+	}
+
+	private <T> Publisher<T> bounded(Publisher<T> flux, OverflowPolicy overflow,
+			FunctionMeter meter) {
+		Publisher<T> bounded = new BoundedBuffer<>(flux, overflow, meter);
+		if (nonBlockingIo) {
+			// Writes never block, so the buffer is only drained when the client catches up
+			return bounded;
+		}
+		// Hand off to another thread, so a blocking write to a slow client does not stall
+		// the source (and the overflow policy gets a chance to act)
+		return Flux.from(bounded).publishOn(Schedulers.elastic(), 1);
+	}
+
+	private <T> ResponseBodyEmitterSubscriber<T> subscriber(Publisher<T> exported,
+			ResponseBodyEmitter emitter, MediaType mediaType, Format format,
+			boolean single, FlushPolicy policy, FunctionMeter meter) {
+		ResponseBodyWriter writer = new ResponseBodyWriter(emitter, messageConverters,
+				mediaType, format, single, policy, timer, meter);
+		writer.setEscapeStrings(escapeStrings);
+		return new ResponseBodyEmitterSubscriber<>(exported, emitter, writer,
+				batchSize, meter);
 	}
 
 }
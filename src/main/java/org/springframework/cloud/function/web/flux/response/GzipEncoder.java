@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip encoder for a streamed response. Each block of bytes that the response is
+ * flushed in is compressed and then sync-flushed, so the client can decompress it
+ * straight away instead of waiting for the end of the stream. Blocks smaller than a
+ * threshold are not worth the CPU, so they are stored instead of compressed (the
+ * stream is still gzip).
+ *
+ * @author Dave Syer
+ *
+ */
+class GzipEncoder {
+
+	private final ByteArrayOutputStream target = new ByteArrayOutputStream(256);
+
+	private final SyncFlushStream gzip;
+
+	private final int minSize;
+
+	private int level = -1;
+
+	public GzipEncoder(int minSize) throws IOException {
+		this.gzip = new SyncFlushStream(this.target);
+		this.minSize = minSize;
+	}
+
+	/**
+	 * @param bytes a block of the response
+	 * @return the compressed block, ready to send
+	 */
+	public byte[] encode(byte[] bytes) throws IOException {
+		this.gzip.setLevel(bytes.length < this.minSize ? Deflater.NO_COMPRESSION
+				: Deflater.DEFAULT_COMPRESSION);
+		this.gzip.write(bytes);
+		this.gzip.flush();
+		return drain();
+	}
+
+	/**
+	 * @return the end of the gzip stream, to send after the last block
+	 */
+	public byte[] finish() throws IOException {
+		this.gzip.finish();
+		return drain();
+	}
+
+	/**
+	 * Release the native memory held by the deflater. Safe to call more than once, and
+	 * the encoder cannot be used afterwards.
+	 */
+	public void close() {
+		this.gzip.end();
+	}
+
+	private byte[] drain() {
+		byte[] result = this.target.toByteArray();
+		this.target.reset();
+		return result;
+	}
+
+	private class SyncFlushStream extends GZIPOutputStream {
+
+		SyncFlushStream(OutputStream out) throws IOException {
+			super(out, 512, true);
+		}
+
+		void setLevel(int level) throws IOException {
+			if (level != GzipEncoder.this.level) {
+				GzipEncoder.this.level = level;
+				this.def.setLevel(level);
+				// Apply it now, before the next block is written, otherwise the deflater
+				// compresses the next block with the old level
+				this.def.setInput(new byte[0]);
+				int count;
+				while ((count = this.def.deflate(this.buf, 0, this.buf.length,
+						Deflater.NO_FLUSH)) > 0) {
+					this.out.write(this.buf, 0, count);
+				}
+			}
+		}
+
+		void end() {
+			this.def.end();
+		}
+
+	}
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Hashed wheel timer for idle response streams. Streams register a {@link Watch} once,
+ * and then only record their activity in it (a volatile write of the current tick,
+ * with no timer task to cancel and re-arm). When the wheel reaches the slot of a watch
+ * it checks the recorded activity, and either fires or puts the watch back in the slot
+ * for its new deadline. Deadlines are accurate to one tick.
+ *
+ * @author Dave Syer
+ *
+ */
+class IdleTimer {
+
+	private final long tickMillis;
+
+	private final List<Queue<Watch>> wheel;
+
+	private final Queue<Watch> pending = new ConcurrentLinkedQueue<>();
+
+	private final ScheduledExecutorService ticker;
+
+	private volatile long tick;
+
+	public IdleTimer(long tickMillis, int wheelSize) {
+		this.tickMillis = tickMillis;
+		this.wheel = new ArrayList<>(wheelSize);
+		for (int i = 0; i < wheelSize; i++) {
+			this.wheel.add(new ConcurrentLinkedQueue<>());
+		}
+		CustomizableThreadFactory threads = new CustomizableThreadFactory(
+				"function-idle-");
+		threads.setDaemon(true);
+		this.ticker = Executors.newSingleThreadScheduledExecutor(threads);
+		this.ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Start watching a stream.
+	 *
+	 * @param timeout the idle timeout in milliseconds (0 for none)
+	 * @param heartbeat the heartbeat interval in milliseconds (0 for none)
+	 * @param callback the callback for idle and heartbeat events
+	 * @return a watch for the stream to record its activity in
+	 */
+	public Watch watch(long timeout, long heartbeat, Callback callback) {
+		Watch watch = new Watch(ticks(timeout), ticks(heartbeat), callback);
+		// Only the ticker touches the wheel, so a new watch cannot land in a slot
+		// that is being emptied
+		this.pending.offer(watch);
+		return watch;
+	}
+
+	public void stop() {
+		this.ticker.shutdownNow();
+	}
+
+	private long ticks(long millis) {
+		if (millis <= 0) {
+			return 0;
+		}
+		return Math.max(1, (millis + this.tickMillis - 1) / this.tickMillis);
+	}
+
+	private void schedule(Watch watch) {
+		long now = this.tick;
+		long delay = watch.delay(now);
+		if (delay == 0) {
+			// Nothing to watch for
+			return;
+		}
+		long deadline = now + delay;
+		watch.rounds = (delay - 1) / this.wheel.size();
+		this.wheel.get((int) (deadline % this.wheel.size())).offer(watch);
+	}
+
+	private void advance() {
+		for (Watch watch = this.pending.poll(); watch != null; watch = this.pending
+				.poll()) {
+			if (!watch.cancelled) {
+				schedule(watch);
+			}
+		}
+		long now = ++this.tick;
+		Queue<Watch> slot = this.wheel.get((int) (now % this.wheel.size()));
+		List<Watch> due = new ArrayList<>();
+		for (Watch watch = slot.poll(); watch != null; watch = slot.poll()) {
+			due.add(watch);
+		}
+		for (Watch watch : due) {
+			if (watch.cancelled) {
+				continue;
+			}
+			if (watch.rounds > 0) {
+				watch.rounds--;
+				slot.offer(watch);
+				continue;
+			}
+			try {
+				if (watch.fire(now)) {
+					schedule(watch);
+				}
+			}
+			catch (RuntimeException e) {
+				// E.g. the callback executor is shut down, so stop watching
+				watch.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Listener for events on a watched stream. The methods are called on the timer
+	 * thread, which watches all the streams, so they should hand off any real work (in
+	 * particular any I/O) instead of doing it themselves.
+	 */
+	interface Callback {
+
+		/**
+		 * Called when the stream has been idle for longer than its timeout.
+		 */
+		void idle();
+
+		/**
+		 * Called when nothing has been sent for longer than the heartbeat interval.
+		 */
+		void heartbeat();
+
+	}
+
+	/**
+	 * The registration of a single stream.
+	 */
+	class Watch {
+
+		private final long timeout;
+
+		private final long heartbeat;
+
+		private final Callback callback;
+
+		private volatile long active;
+
+		private volatile long sent;
+
+		private volatile boolean cancelled;
+
+		private long rounds;
+
+		Watch(long timeout, long heartbeat, Callback callback) {
+			this.timeout = timeout;
+			this.heartbeat = heartbeat;
+			this.callback = callback;
+			this.active = IdleTimer.this.tick;
+			this.sent = this.active;
+		}
+
+		/**
+		 * Record activity (an element sent to the client).
+		 */
+		public void touch() {
+			long now = IdleTimer.this.tick;
+			this.active = now;
+			this.sent = now;
+		}
+
+		public void cancel() {
+			this.cancelled = true;
+		}
+
+		private long delay(long now) {
+			long delay = Long.MAX_VALUE;
+			if (this.timeout > 0) {
+				delay = Math.min(delay, this.active + this.timeout - now);
+			}
+			if (this.heartbeat > 0) {
+				delay = Math.min(delay, this.sent + this.heartbeat - now);
+			}
+			return delay == Long.MAX_VALUE ? 0 : Math.max(1, delay);
+		}
+
+		/**
+		 * @return true if the watch is still live and should be rescheduled
+		 */
+		private boolean fire(long now) {
+			if (this.timeout > 0 && now - this.active >= this.timeout) {
+				this.cancelled = true;
+				this.callback.idle();
+				return false;
+			}
+			if (this.heartbeat > 0 && now - this.sent >= this.heartbeat) {
+				this.sent = now;
+				this.callback.heartbeat();
+			}
+			return !this.cancelled;
+		}
+
+	}
+
+}
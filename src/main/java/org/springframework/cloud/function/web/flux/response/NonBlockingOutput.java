@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Response output that uses Servlet 3.1 non-blocking I/O. Chunks are queued and only
+ * written when the container says the output is ready, so a slow client never blocks
+ * the thread that produces the elements. Callbacks registered with
+ * {@link #whenDrained(Runnable)} run once everything queued so far has been handed to
+ * the container, which is what the subscriber uses to apply backpressure and to
+ * complete the response.
+ *
+ * @author Dave Syer
+ *
+ */
+class NonBlockingOutput implements WriteListener {
+
+	private final ServletOutputStream output;
+
+	private final Queue<byte[]> queue = new ArrayDeque<>();
+
+	private final List<Runnable> callbacks = new ArrayList<>();
+
+	private IOException error;
+
+	public NonBlockingOutput(ServletOutputStream output) {
+		this.output = output;
+		output.setWriteListener(this);
+	}
+
+	public void write(byte[] bytes) throws IOException {
+		List<Runnable> drained;
+		synchronized (this) {
+			if (this.error != null) {
+				throw this.error;
+			}
+			this.queue.add(bytes);
+			drained = drain();
+		}
+		run(drained);
+	}
+
+	/**
+	 * Run the callback when all the queued chunks have been written (immediately if
+	 * nothing is queued).
+	 *
+	 * @param callback the callback to run
+	 */
+	public void whenDrained(Runnable callback) {
+		synchronized (this) {
+			if (!this.queue.isEmpty() || !this.output.isReady()) {
+				this.callbacks.add(callback);
+				return;
+			}
+		}
+		callback.run();
+	}
+
+	@Override
+	public void onWritePossible() throws IOException {
+		List<Runnable> drained;
+		synchronized (this) {
+			drained = drain();
+		}
+		run(drained);
+	}
+
+	@Override
+	public void onError(Throwable t) {
+		List<Runnable> drained;
+		synchronized (this) {
+			this.error = t instanceof IOException ? (IOException) t : new IOException(t);
+			this.queue.clear();
+			drained = new ArrayList<>(this.callbacks);
+			this.callbacks.clear();
+		}
+		// Let whoever is waiting carry on and find out about the error when it writes
+		run(drained);
+	}
+
+	private List<Runnable> drain() throws IOException {
+		while (!this.queue.isEmpty() && this.output.isReady()) {
+			this.output.write(this.queue.poll());
+		}
+		if (!this.queue.isEmpty() || !this.output.isReady()) {
+			return null;
+		}
+		this.output.flush();
+		if (this.callbacks.isEmpty() || !this.output.isReady()) {
+			return null;
+		}
+		List<Runnable> drained = new ArrayList<>(this.callbacks);
+		this.callbacks.clear();
+		return drained;
+	}
+
+	private void run(List<Runnable> callbacks) {
+		if (callbacks != null) {
+			for (Runnable callback : callbacks) {
+				callback.run();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+/**
+ * Limit on the number of elements buffered for one client of a streamed response, and
+ * what to do when a client is too slow to keep it below the limit.
+ *
+ * @author Dave Syer
+ *
+ */
+public class OverflowPolicy {
+
+	private final int bufferSize;
+
+	private final Strategy strategy;
+
+	public OverflowPolicy(int bufferSize, Strategy strategy) {
+		this.bufferSize = bufferSize;
+		this.strategy = strategy;
+	}
+
+	public int getBufferSize() {
+		return this.bufferSize;
+	}
+
+	public Strategy getStrategy() {
+		return this.strategy;
+	}
+
+	@Override
+	public String toString() {
+		return "OverflowPolicy [bufferSize=" + this.bufferSize + ", strategy="
+				+ this.strategy + "]";
+	}
+
+	/**
+	 * What to do with a new element when the buffer is full.
+	 */
+	public enum Strategy {
+
+		/**
+		 * Drop the oldest buffered element to make room.
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Discard everything buffered and keep only the new element (conflation).
+		 */
+		LATEST,
+
+		/**
+		 * Disconnect the client.
+		 */
+		DISCONNECT;
+
+	}
+
+}
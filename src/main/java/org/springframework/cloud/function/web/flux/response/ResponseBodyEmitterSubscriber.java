@@ -17,107 +17,173 @@
 package org.springframework.cloud.function.web.flux.response;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
-import org.springframework.http.MediaType;
+import org.springframework.cloud.function.web.flux.metrics.FunctionMeter;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
 
 /**
  * Subscriber that emits any value produced by the {@link Flux} into the delegated
- * {@link ResponseBodyEmitter}.
+ * {@link ResponseBodyEmitter}, through a {@link ResponseBodyWriter} that frames and
+ * coalesces the writes. Demand is bounded: elements are requested in batches, and the
+ * next batch is only requested when all the elements of the previous one have been
+ * handed to the writer (which never buffers more than its flush threshold).
  *
  * @author Dave Syer
  */
 class ResponseBodyEmitterSubscriber<T> implements Subscriber<T> {
 
-	private final MediaType mediaType;
+	private final Publisher<T> observable;
 
-	private Subscription subscription;
+	private final int batchSize;
+
+	private int remaining;
+
+	private volatile Subscription subscription;
 
 	private final ResponseBodyEmitter responseBodyEmitter;
 
-	private boolean completed;
+	private final ResponseBodyWriter writer;
+
+	private volatile boolean completed;
+
+	private final FunctionMeter meter;
+
+	private final AtomicBoolean finished = new AtomicBoolean();
+
+	private long start;
+
+	private boolean firstElementSeen;
+
+	private IdleTimer idleTimer;
+
+	private Executor callbacks;
 
-	private boolean firstElementWritten;
+	private final AtomicBoolean heartbeatPending = new AtomicBoolean();
 
-	private boolean single;
+	private long idleTimeout;
 
-	private boolean json;
+	private long heartbeat;
 
-	public ResponseBodyEmitterSubscriber(MediaType mediaType, Publisher<T> observable,
-			ResponseBodyEmitter responseBodyEmitter, boolean json) {
+	private IdleTimer.Watch watch;
 
-		this.mediaType = mediaType;
+	public ResponseBodyEmitterSubscriber(Publisher<T> observable,
+			ResponseBodyEmitter responseBodyEmitter, ResponseBodyWriter writer,
+			int batchSize, FunctionMeter meter) {
+
+		this.observable = observable;
 		this.responseBodyEmitter = responseBodyEmitter;
-		this.json = json;
+		this.writer = writer;
+		this.batchSize = batchSize;
+		this.meter = meter;
 		this.responseBodyEmitter.onTimeout(new Timeout());
 		this.responseBodyEmitter.onCompletion(new Complete());
-		this.single = observable instanceof Mono;
-		observable.subscribe(this);
+	}
+
+	public ResponseBodyEmitter getEmitter() {
+		return this.responseBodyEmitter;
+	}
+
+	public ResponseBodyWriter getWriter() {
+		return this.writer;
+	}
+
+	/**
+	 * Close the response if no element arrives for a while, and optionally send
+	 * heartbeats in the meantime. Must be called before {@link #start()}.
+	 *
+	 * @param idleTimer the timer to watch the stream with
+	 * @param callbacks the executor that closes the stream and sends the heartbeats
+	 * (the timer thread only tells it when)
+	 * @param idleTimeout the idle timeout in milliseconds (0 for none)
+	 * @param heartbeat the heartbeat interval in milliseconds (0 for none)
+	 */
+	public void setIdleTimeout(IdleTimer idleTimer, Executor callbacks,
+			long idleTimeout, long heartbeat) {
+		this.idleTimer = idleTimer;
+		this.callbacks = callbacks;
+		this.idleTimeout = idleTimeout;
+		this.heartbeat = heartbeat;
+	}
+
+	/**
+	 * Subscribe to the publisher and request the first batch of elements. Should only
+	 * be called once the emitter has been initialized with the response, so that
+	 * writes go straight to the output instead of being buffered by the emitter.
+	 */
+	public void start() {
+		if (this.meter != null) {
+			this.start = this.meter.started();
+		}
+		if (this.idleTimer != null) {
+			this.watch = this.idleTimer.watch(this.idleTimeout, this.heartbeat,
+					new Idle());
+		}
+		this.observable.subscribe(this);
 	}
 
 	@Override
 	public void onSubscribe(Subscription subscription) {
 		this.subscription = subscription;
-		subscription.request(Long.MAX_VALUE);
+		this.remaining = this.batchSize;
+		subscription.request(this.batchSize);
 	}
 
 	@Override
-	public void onNext(T value) {
-
-		Object object = value;
-
+	public synchronized void onNext(T value) {
+		if (completed) {
+			return;
+		}
+		if (this.watch != null) {
+			this.watch.touch();
+		}
 		try {
-			if (isJson()) {
-				if (!this.firstElementWritten) {
-					if (!single) {
-						responseBodyEmitter.send("[");
-						this.firstElementWritten = true;
-					}
-				}
-				else {
-					responseBodyEmitter.send(",");
-				}
-				if (!single && value.getClass() == String.class
-						&& !((String) value).contains("\"")) {
-					object = "\"" + value + "\"";
-				}
-			}
-			if (!completed) {
-				responseBodyEmitter.send(object, mediaType);
-			}
+			writer.write(value);
 		}
-		catch (
-
-		IOException e) {
+		catch (IOException e) {
+			writer.abort();
 			throw new RuntimeException(e.getMessage(), e);
 		}
+		if (this.meter != null) {
+			if (!this.firstElementSeen) {
+				this.firstElementSeen = true;
+				this.meter.firstElement(this.start);
+			}
+			this.meter.element();
+		}
+		if (--this.remaining == 0 && !completed) {
+			// The whole batch has been written, so it is safe to ask for more (once the
+			// client has caught up if the output is non-blocking)
+			this.remaining = this.batchSize;
+			writer.whenDrained(() -> this.subscription.request(this.batchSize));
+		}
 	}
 
 	@Override
-	public void onError(Throwable e) {
+	public synchronized void onError(Throwable e) {
 		if (!completed) {
 			completed = true;
-			try {
-				if (isJson()) {
-					if (!single) {
-						if (!this.firstElementWritten) {
-							responseBodyEmitter.send("[]");
-						}
-						else {
-							responseBodyEmitter.send("]");
-						}
-					}
+			if (this.meter != null) {
+				if (e instanceof TimeoutException) {
+					this.meter.timeout();
+				}
+				else {
+					this.meter.error();
 				}
+			}
+			finish();
+			try {
+				writer.close();
 				if (e instanceof TimeoutException) {
-					responseBodyEmitter.complete();
+					writer.whenDrained(responseBodyEmitter::complete);
 				}
 				else {
 					responseBodyEmitter.completeWithError(e);
@@ -130,35 +196,88 @@ class ResponseBodyEmitterSubscriber<T> implements Subscriber<T> {
 	}
 
 	@Override
-	public void onComplete() {
+	public synchronized void onComplete() {
 		if (!completed) {
 			completed = true;
+			finish();
 			try {
-				if (isJson()) {
-					if (!single) {
-						if (!this.firstElementWritten) {
-							responseBodyEmitter.send("[");
-						}
-						responseBodyEmitter.send("]");
-					}
-				}
+				writer.close();
 			}
 			catch (IOException e) {
 				throw new RuntimeException(e.getMessage(), e);
 			}
-			responseBodyEmitter.complete();
+			writer.whenDrained(responseBodyEmitter::complete);
+		}
+	}
+
+	private void cancel() {
+		finish();
+		Subscription subscription = this.subscription;
+		if (subscription != null) {
+			subscription.cancel();
 		}
 	}
 
-	private boolean isJson() {
-		return json;
+	private void finish() {
+		if (this.watch != null) {
+			this.watch.cancel();
+		}
+		if (this.meter != null && this.finished.compareAndSet(false, true)) {
+			this.meter.finished(this.start);
+		}
 	}
 
 	class Complete implements Runnable {
 
 		@Override
 		public void run() {
-			ResponseBodyEmitterSubscriber.this.subscription.cancel();
+			cancel();
+			// The response is finished (or broken), so anything still held goes
+			writer.abort();
+		}
+	}
+
+	/**
+	 * Called on the timer thread, so it only hands the work off. Running the work
+	 * under the subscriber's lock keeps it from racing with the signals from upstream.
+	 */
+	class Idle implements IdleTimer.Callback {
+
+		@Override
+		public void idle() {
+			callbacks.execute(() -> {
+				synchronized (ResponseBodyEmitterSubscriber.this) {
+					if (meter != null && !completed) {
+						meter.timeout();
+					}
+					cancel();
+					onComplete();
+				}
+			});
+		}
+
+		@Override
+		public void heartbeat() {
+			if (!heartbeatPending.compareAndSet(false, true)) {
+				// The last one has not been sent yet (slow client)
+				return;
+			}
+			callbacks.execute(() -> {
+				heartbeatPending.set(false);
+				synchronized (ResponseBodyEmitterSubscriber.this) {
+					if (completed) {
+						return;
+					}
+					try {
+						writer.heartbeat();
+					}
+					catch (IOException e) {
+						// The client has gone away
+						writer.abort();
+						cancel();
+					}
+				}
+			});
 		}
 	}
 
@@ -166,8 +285,11 @@ class ResponseBodyEmitterSubscriber<T> implements Subscriber<T> {
 
 		@Override
 		public void run() {
+			if (meter != null && !completed) {
+				meter.timeout();
+			}
 			onComplete();
-			ResponseBodyEmitterSubscriber.this.subscription.cancel();
+			cancel();
 		}
 	}
 }
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import org.springframework.cloud.function.web.flux.metrics.FunctionMeter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+/**
+ * Aggregating writer for the elements of a streamed response. Each element is encoded
+ * with the first compatible {@link HttpMessageConverter} (looked up once per element
+ * type, not once per element) and framed according to the {@link Format} into a
+ * buffer. The buffer is sent to the {@link ResponseBodyEmitter} in one write when the
+ * {@link FlushPolicy} says so, instead of several small writes and flushes per element.
+ *
+ * @author Dave Syer
+ *
+ */
+class ResponseBodyWriter {
+
+	private static final byte[] DATA = "data:".getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] EVENT_END = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] LINE_END = "\n".getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+	private final ResponseBodyEmitter emitter;
+
+	private final List<HttpMessageConverter<?>> converters;
+
+	private final MediaType mediaType;
+
+	private final Format format;
+
+	private final boolean single;
+
+	private final FlushPolicy policy;
+
+	private final ScheduledExecutorService timer;
+
+	private final FunctionMeter meter;
+
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+	private final HttpOutputMessage message = new BufferedOutputMessage();
+
+	private HttpMessageConverter<Object> converter;
+
+	private Class<?> converterType;
+
+	private ScheduledFuture<?> scheduled;
+
+	private NonBlockingOutput output;
+
+	private ObjectWriter objectWriter;
+
+	private Class<?> objectType;
+
+	private JsonGenerator generator;
+
+	private GzipEncoder encoder;
+
+	private boolean escapeStrings;
+
+	private boolean started;
+
+	private boolean closed;
+
+	public ResponseBodyWriter(ResponseBodyEmitter emitter,
+			List<HttpMessageConverter<?>> converters, MediaType mediaType, Format format,
+			boolean single, FlushPolicy policy, ScheduledExecutorService timer,
+			FunctionMeter meter) {
+		this.emitter = emitter;
+		this.converters = converters;
+		this.mediaType = mediaType;
+		this.format = format;
+		this.single = single;
+		this.policy = policy;
+		this.timer = timer;
+		this.meter = meter;
+	}
+
+	/**
+	 * Switch to non-blocking output. Flushed bytes go straight to the output instead of
+	 * through the emitter, which should not be used to send anything after this.
+	 *
+	 * @param output the non-blocking output
+	 */
+	public void setOutput(NonBlockingOutput output) {
+		this.output = output;
+	}
+
+	/**
+	 * Compress the response. Every flushed block is compressed and sync-flushed on its
+	 * own, so it reaches the client as soon as it would have done uncompressed.
+	 *
+	 * @param encoder the encoder to compress with
+	 */
+	public void setEncoder(GzipEncoder encoder) {
+		this.encoder = encoder;
+	}
+
+	/**
+	 * Quote and escape string elements of a JSON array or stream. Off by default, in
+	 * which case a string is assumed to be JSON already if it contains a quote, and is
+	 * only wrapped in quotes otherwise.
+	 *
+	 * @param escapeStrings flag to escape string elements
+	 */
+	public void setEscapeStrings(boolean escapeStrings) {
+		this.escapeStrings = escapeStrings;
+	}
+
+	/**
+	 * Serialize elements of the given type with a precomputed writer, through one
+	 * generator for the whole stream, instead of looking up a converter. Other
+	 * elements, and all elements of a non-JSON response, still go through a converter.
+	 *
+	 * @param objectWriter the writer for the output type of the function
+	 * @param objectType the output type of the function
+	 */
+	public void setObjectWriter(ObjectWriter objectWriter, Class<?> objectType) {
+		if (objectWriter != null && (this.format == Format.JACKSON
+				|| MediaType.APPLICATION_JSON.isCompatibleWith(this.mediaType))) {
+			this.objectWriter = objectWriter;
+			this.objectType = objectType;
+		}
+	}
+
+	/**
+	 * Run the callback once everything flushed so far has been written to the response
+	 * (immediately unless the output is non-blocking).
+	 *
+	 * @param callback the callback to run
+	 */
+	public void whenDrained(Runnable callback) {
+		NonBlockingOutput output = this.output;
+		if (output == null) {
+			callback.run();
+		}
+		else {
+			output.whenDrained(callback);
+		}
+	}
+
+	public synchronized void write(Object value) throws IOException {
+		if (this.closed) {
+			return;
+		}
+		switch (this.format) {
+		case JSON:
+			if (!this.single) {
+				this.buffer.write(this.started ? ',' : '[');
+				encodeElement(value);
+			}
+			else {
+				encode(value);
+			}
+			break;
+		case SSE:
+			this.buffer.write(DATA);
+			encode(value);
+			this.buffer.write(EVENT_END);
+			break;
+		case NDJSON:
+			encodeElement(value);
+			this.buffer.write(LINE_END);
+			break;
+		case JACKSON:
+			if (!this.started && !this.single) {
+				generator().writeStartArray();
+			}
+			serialize(value);
+			break;
+		case BINARY:
+			// Already a chunk of the response, so it goes straight out
+			flush();
+			byte[] bytes = bytes(value);
+			send(this.encoder == null ? bytes : this.encoder.encode(bytes));
+			this.started = true;
+			return;
+		default:
+			encode(value);
+		}
+		this.started = true;
+		if (this.policy.isImmediate()
+				|| this.buffer.size() >= this.policy.getBufferSize()) {
+			flush();
+		}
+		else if (this.scheduled == null) {
+			this.scheduled = this.timer.schedule(this::flushQuietly,
+					this.policy.getMaxLatency(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Write any closing frame and flush everything that is still buffered. Subsequent
+	 * writes are ignored.
+	 */
+	public synchronized void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		try {
+			if (this.format == Format.JSON && !this.single) {
+				if (!this.started) {
+					this.buffer.write('[');
+				}
+				this.buffer.write(']');
+			}
+			if (this.format == Format.JACKSON && !this.single) {
+				if (!this.started) {
+					generator().writeStartArray();
+				}
+				generator().writeEndArray();
+				generator().flush();
+			}
+			flush();
+			if (this.encoder != null) {
+				send(this.encoder.finish());
+			}
+		}
+		finally {
+			this.closed = true;
+			release();
+		}
+	}
+
+	/**
+	 * Give up on the response (e.g. the client has gone away or a write failed), dropping
+	 * whatever is still buffered. Subsequent writes are ignored.
+	 */
+	public synchronized void abort() {
+		if (this.closed) {
+			return;
+		}
+		this.buffer.reset();
+		this.closed = true;
+		release();
+	}
+
+	private void release() {
+		if (this.scheduled != null) {
+			this.scheduled.cancel(false);
+			this.scheduled = null;
+		}
+		if (this.encoder != null) {
+			this.encoder.close();
+		}
+	}
+
+	/**
+	 * Send an empty comment to keep an idle server sent event stream open (ignored for
+	 * other formats).
+	 */
+	public synchronized void heartbeat() throws IOException {
+		if (this.closed || this.format != Format.SSE) {
+			return;
+		}
+		this.buffer.write(HEARTBEAT);
+		flush();
+	}
+
+	public synchronized void flush() throws IOException {
+		if (this.scheduled != null) {
+			this.scheduled.cancel(false);
+			this.scheduled = null;
+		}
+		if (this.closed || this.buffer.size() == 0) {
+			return;
+		}
+		byte[] bytes = this.buffer.toByteArray();
+		this.buffer.reset();
+		send(this.encoder == null ? bytes : this.encoder.encode(bytes));
+	}
+
+	private void send(byte[] bytes) throws IOException {
+		if (this.meter != null) {
+			this.meter.bytes(bytes.length);
+		}
+		if (this.output != null) {
+			this.output.write(bytes);
+		}
+		else {
+			// Already framed (e.g. as server sent events), so the bytes go out as they are
+			this.emitter.send(bytes, MediaType.APPLICATION_OCTET_STREAM);
+		}
+	}
+
+	private synchronized void flushQuietly() {
+		this.scheduled = null;
+		try {
+			flush();
+		}
+		catch (Exception e) {
+			// The response is no longer usable, so drop whatever is left
+			abort();
+		}
+	}
+
+	private byte[] bytes(Object value) {
+		if (value instanceof byte[]) {
+			return (byte[]) value;
+		}
+		ByteBuffer buffer = (ByteBuffer) value;
+		if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+				&& buffer.remaining() == buffer.array().length) {
+			return buffer.array();
+		}
+		// Only a slice of the backing array (or no array at all)
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Encode an element of a JSON array or stream. A string is a JSON value there, so
+	 * it is either quoted and escaped, or (by default) passed through as it is if it
+	 * already looks like JSON.
+	 */
+	private void encodeElement(Object value) throws IOException {
+		if (this.escapeStrings && value instanceof String) {
+			this.buffer.write('"');
+			this.buffer.write(JsonStringEncoder.getInstance().quoteAsUTF8((String) value));
+			this.buffer.write('"');
+		}
+		else {
+			encode(quote(value));
+		}
+	}
+
+	private Object quote(Object value) {
+		if (value.getClass() == String.class && !((String) value).contains("\"")) {
+			return "\"" + value + "\"";
+		}
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void encode(Object value) throws IOException {
+		Class<?> type = value.getClass();
+		if (type == this.objectType && type != String.class) {
+			serialize(value);
+			return;
+		}
+		if (type != this.converterType) {
+			this.converter = (HttpMessageConverter<Object>) findConverter(type);
+			this.converterType = type;
+		}
+		this.converter.write(value, this.mediaType, this.message);
+	}
+
+	private void serialize(Object value) throws IOException {
+		Class<?> type = value.getClass();
+		ObjectWriter writer = type == this.objectType ? this.objectWriter
+				: this.objectWriter.forType(type);
+		writer.writeValue(generator(), value);
+		this.generator.flush();
+	}
+
+	private JsonGenerator generator() throws IOException {
+		if (this.generator == null) {
+			this.generator = this.objectWriter.getFactory().createGenerator(this.buffer);
+			// Values are framed by the format, not the generator
+			this.generator.setRootValueSeparator(null);
+		}
+		return this.generator;
+	}
+
+	private HttpMessageConverter<?> findConverter(Class<?> type) {
+		for (HttpMessageConverter<?> converter : this.converters) {
+			if (converter.canWrite(type, this.mediaType)) {
+				return converter;
+			}
+		}
+		throw new IllegalArgumentException("No suitable converter for " + type);
+	}
+
+	/**
+	 * The framing applied to each element written to the response.
+	 */
+	enum Format {
+
+		/**
+		 * A JSON array (or a single JSON value for a single valued response).
+		 */
+		JSON,
+
+		/**
+		 * Server sent events, one per element.
+		 */
+		SSE,
+
+		/**
+		 * Newline delimited JSON, one document per line.
+		 */
+		NDJSON,
+
+		/**
+		 * No framing at all: elements are concatenated.
+		 */
+		PLAIN,
+
+		/**
+		 * Elements are <code>byte[]</code> or {@link ByteBuffer} chunks of the response,
+		 * written as they are without a converter.
+		 */
+		BINARY,
+
+		/**
+		 * A sequence (or single value) serialized token by token with a Jackson
+		 * generator, for binary formats like Smile and CBOR.
+		 */
+		JACKSON;
+
+	}
+
+	private class BufferedOutputMessage implements HttpOutputMessage {
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		public BufferedOutputMessage() {
+			// Stops converters from computing a content length for every element
+			this.headers.set(HttpHeaders.TRANSFER_ENCODING, "chunked");
+		}
+
+		@Override
+		public OutputStream getBody() throws IOException {
+			return ResponseBodyWriter.this.buffer;
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return this.headers;
+		}
+
+	}
+
+}
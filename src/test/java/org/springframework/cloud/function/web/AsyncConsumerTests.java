@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cloud.function.web.flux.ConsumerExecutors;
+import org.springframework.cloud.function.web.flux.ConsumerExecutors.Rejection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.consumer.async=true",
+		"spring.cloud.function.web.consumer.pool-size=1",
+		"spring.cloud.function.web.consumer.queue-capacity=1" })
+public class AsyncConsumerTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private TestConfiguration test;
+
+	@Before
+	public void init() {
+		test.list.clear();
+	}
+
+	@Test
+	public void updates() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/updates")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"one\",\"two\"]"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(result.getBody()).isEqualTo("{\"count\":2}");
+		for (int i = 0; i < 50 && test.list.size() < 2; i++) {
+			Thread.sleep(20L);
+		}
+		assertThat(test.list).containsExactly("one", "two");
+	}
+
+	@Test
+	public void streamedUpdates() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/updates"))
+				.contentType(MediaType.valueOf("application/x-ndjson"))
+				.body("\"one\"\n\"two\"\n\"three\"\n"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		// The consumer has read the whole stream by the time we get the count
+		assertThat(result.getBody()).isEqualTo("{\"count\":3}");
+		assertThat(test.list).containsExactly("one", "two", "three");
+	}
+
+	@Test
+	public void fullQueueIsRejected() throws Exception {
+		try {
+			// One request runs (and blocks) and one waits in the queue
+			assertThat(post("/slow").getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+			for (int i = 0; i < 50 && test.running.getCount() > 0; i++) {
+				Thread.sleep(20L);
+			}
+			assertThat(post("/slow").getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+			assertThat(post("/slow").getStatusCode())
+					.isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		finally {
+			test.release.countDown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyQueue() {
+		new ConsumerExecutors(1, 0, Rejection.REJECT);
+	}
+
+	private ResponseEntity<String> post(String path) throws Exception {
+		return rest.exchange(RequestEntity.post(new URI(path))
+				.contentType(MediaType.APPLICATION_JSON).body("[\"foo\"]"), String.class);
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		private List<String> list = new CopyOnWriteArrayList<>();
+
+		private CountDownLatch running = new CountDownLatch(1);
+
+		private CountDownLatch release = new CountDownLatch(1);
+
+		@Bean
+		public Consumer<Flux<String>> updates() {
+			return flux -> flux.subscribe(value -> list.add(value));
+		}
+
+		@Bean
+		public Consumer<Flux<String>> slow() {
+			return flux -> flux.subscribe(value -> {
+				running.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cloud.function.web.flux.response.FluxReturnValueHandler;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = "spring.cloud.function.web.batch-size=4")
+public class BatchSizeTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private TestConfiguration test;
+
+	@Before
+	public void init() {
+		test.requests.clear();
+	}
+
+	@Test
+	public void demandIsBounded() throws Exception {
+		String body = rest.getForObject("/numbers", String.class);
+		assertThat(body).startsWith("[0,1,2,").endsWith(",99]");
+		assertThat(test.requests).isNotEmpty();
+		long total = 0;
+		for (Long request : test.requests) {
+			assertThat(request).isLessThanOrEqualTo(4L);
+			total += request;
+		}
+		assertThat(total).isGreaterThanOrEqualTo(100L);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void batchSizeMustBePositive() throws Exception {
+		FluxReturnValueHandler handler = new FluxReturnValueHandler(
+				Collections.<HttpMessageConverter<?>>emptyList());
+		try {
+			handler.setBatchSize(0);
+		}
+		finally {
+			handler.destroy();
+		}
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		private List<Long> requests = new CopyOnWriteArrayList<>();
+
+		@Bean
+		public Supplier<Flux<Integer>> numbers() {
+			return () -> Flux.range(0, 100).doOnRequest(requests::add);
+		}
+
+	}
+}
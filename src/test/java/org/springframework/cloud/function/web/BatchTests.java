@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.functions.shout.batch.enabled=true",
+		"spring.cloud.function.web.functions.shout.batch.max-size=4",
+		"spring.cloud.function.web.functions.shout.batch.max-wait=500" })
+public class BatchTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private TestConfiguration test;
+
+	@Test
+	public void batch() throws Exception {
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for (String value : new String[] { "a", "b", "c", "d" }) {
+			results.add(CompletableFuture.supplyAsync(
+					() -> rest.getForObject("/shout/" + value, String.class)));
+		}
+		List<String> values = new ArrayList<>();
+		for (CompletableFuture<String> result : results) {
+			values.add(result.get(10, TimeUnit.SECONDS));
+		}
+		assertThat(values).containsExactly("A!", "B!", "C!", "D!");
+		assertThat(test.batches.get()).isLessThan(4);
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		private AtomicInteger batches = new AtomicInteger();
+
+		@Bean
+		public Function<Flux<String>, Flux<String>> shout() {
+			return flux -> {
+				batches.incrementAndGet();
+				return flux.map(value -> value.toUpperCase() + "!");
+			};
+		}
+
+	}
+}
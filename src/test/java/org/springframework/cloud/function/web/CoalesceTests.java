@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.functions.slow.coalesce=true" })
+public class CoalesceTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private TestConfiguration test;
+
+	@Test
+	public void coalesce() throws Exception {
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			results.add(CompletableFuture
+					.supplyAsync(() -> rest.getForObject("/slow/foo", String.class)));
+		}
+		for (CompletableFuture<String> result : results) {
+			assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("FOO");
+		}
+		assertThat(test.slow.get()).isLessThan(4);
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		private AtomicInteger slow = new AtomicInteger();
+
+		@Bean
+		public Function<String, String> slow() {
+			return value -> {
+				slow.incrementAndGet();
+				try {
+					Thread.sleep(500L);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return value.toUpperCase();
+			};
+		}
+
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.StreamUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.compression.enabled=true",
+		"spring.cloud.function.web.compression.min-size=4" })
+public class CompressionTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+
+	@Test
+	public void gzipResponse() throws Exception {
+		ResponseEntity<byte[]> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+				.body("[\"foo\",\"bar\"]".getBytes()), byte[].class);
+		assertThat(result.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING))
+				.isEqualTo("gzip");
+		assertThat(gunzip(result.getBody())).isEqualTo("[\"FOO\",\"BAR\"]");
+	}
+
+	@Test
+	public void gzipRequest() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+				.body(gzip("[\"foo\",\"bar\"]")), String.class);
+		assertThat(result.getBody()).isEqualTo("[\"FOO\",\"BAR\"]");
+	}
+
+	@Test
+	public void unsupportedEncoding() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.CONTENT_ENCODING, "br")
+				.body("[\"foo\",\"bar\"]".getBytes()), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+	}
+
+	private String gunzip(byte[] bytes) throws Exception {
+		return StreamUtils.copyToString(
+				new GZIPInputStream(new ByteArrayInputStream(bytes)),
+				StandardCharsets.UTF_8);
+	}
+
+	private byte[] gzip(String value) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(value.getBytes());
+		}
+		return bytes.toByteArray();
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		@Bean
+		public Function<Flux<String>, Flux<String>> uppercase() {
+			return flux -> flux.map(value -> value.trim().toUpperCase());
+		}
+
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cloud.function.web.flux.ConcurrencyLimits;
+import org.springframework.cloud.function.web.flux.ConcurrencyLimits.Limiter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.functions.throttled.limit.enabled=true",
+		"spring.cloud.function.web.functions.throttled.limit.initial=1",
+		"spring.cloud.function.web.functions.throttled.limit.max=1" })
+public class ConcurrencyLimitTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private ConcurrencyLimits limits;
+
+	@Test
+	public void limited() throws Exception {
+		List<CompletableFuture<ResponseEntity<String>>> results = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			results.add(CompletableFuture.supplyAsync(
+					() -> rest.getForEntity("/throttled/foo", String.class)));
+		}
+		List<HttpStatus> statuses = new ArrayList<>();
+		for (CompletableFuture<ResponseEntity<String>> result : results) {
+			ResponseEntity<String> response = result.get(10, TimeUnit.SECONDS);
+			statuses.add(response.getStatusCode());
+			if (response.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE) {
+				assertThat(response.getHeaders().getFirst("Retry-After")).isEqualTo("1");
+			}
+		}
+		assertThat(statuses).contains(HttpStatus.OK, HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@Test
+	public void permitIsReleased() throws Exception {
+		assertThat(rest.getForEntity("/throttled/foo", String.class).getStatusCode())
+				.isEqualTo(HttpStatus.OK);
+		// The container completes the async request just after the response is sent
+		Limiter limiter = limits.limiter("throttled");
+		for (int i = 0; i < 100 && limiter.getInFlight() > 0; i++) {
+			Thread.sleep(10L);
+		}
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		@Bean
+		public Function<String, String> throttled() {
+			return value -> {
+				try {
+					Thread.sleep(500L);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return value.toUpperCase();
+			};
+		}
+
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cloud.function.web.flux.ResultCaches;
+import org.springframework.cloud.function.web.flux.metrics.FunctionMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.metrics.enabled=true",
+		"spring.cloud.function.web.functions.lookup.cache.enabled=true",
+		"spring.cloud.function.web.functions.lookup.cache.max-size=10" })
+public class MetricsTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private FunctionMetrics metrics;
+	@Autowired
+	private ResultCaches caches;
+	@Autowired
+	private TestConfiguration test;
+
+	@Before
+	public void init() {
+		metrics.reset();
+		caches.invalidateAll("lookup");
+		test.calls.set(0);
+	}
+
+	@Test
+	public void uppercase() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"foo\",\"bar\"]"), String.class);
+		assertThat(result.getBody()).isEqualTo("[\"[FOO]\",\"[BAR]\"]");
+		Map<String, Object> snapshot = metrics.snapshot("uppercase");
+		assertThat(snapshot).containsEntry("elements", 2L);
+		assertThat(snapshot).containsEntry("inFlight", 0L);
+		assertThat(snapshot).containsEntry("errors", 0L);
+	}
+
+	@Test
+	public void endpoint() throws Exception {
+		rest.exchange(RequestEntity.post(new URI("/uppercase"))
+				.contentType(MediaType.APPLICATION_JSON).body("[\"foo\"]"), String.class);
+		ResponseEntity<String> result = rest
+				.getForEntity("/function-metrics?name=uppercase", String.class);
+		assertThat(result.getBody()).contains("\"elements\":1");
+	}
+
+	@Test
+	public void cache() throws Exception {
+		assertThat(rest.getForObject("/lookup/foo", String.class)).isEqualTo("FOO");
+		assertThat(rest.getForObject("/lookup/foo", String.class)).isEqualTo("FOO");
+		assertThat(test.calls.get()).isEqualTo(1);
+		caches.invalidate("lookup", "foo");
+		assertThat(rest.getForObject("/lookup/foo", String.class)).isEqualTo("FOO");
+		assertThat(test.calls.get()).isEqualTo(2);
+		assertThat(rest.getForObject("/function-metrics/caches", String.class))
+				.contains("\"lookup\":{\"size\":1,\"hits\":1");
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		private AtomicInteger calls = new AtomicInteger();
+
+		@Bean
+		public Function<String, String> lookup() {
+			return value -> {
+				calls.incrementAndGet();
+				return value.toUpperCase();
+			};
+		}
+
+		@Bean
+		public Function<Flux<String>, Flux<String>> uppercase() {
+			return flux -> flux.map(value -> "[" + value.trim().toUpperCase() + "]");
+		}
+
+	}
+}
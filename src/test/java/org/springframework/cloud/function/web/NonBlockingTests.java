@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cloud.function.web.RestApplicationTests.Foo;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = "spring.cloud.function.web.non-blocking-io=true")
+public class NonBlockingTests {
+
+	private static final MediaType EVENT_STREAM = MediaType.valueOf("text/event-stream");
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private TestConfiguration test;
+
+	@Before
+	public void init() {
+		test.list.clear();
+	}
+
+	@Test
+	public void uppercase() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"foo\",\"bar\"]"), String.class);
+		assertThat(result.getBody()).isEqualTo("[\"[FOO]\",\"[BAR]\"]");
+	}
+
+	@Test
+	public void uppercaseFoos() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/upFoos")).contentType(MediaType.APPLICATION_JSON)
+				.body("[{\"value\":\"f,o]o\"},\n{\"value\":\"bar\"}]"), String.class);
+		assertThat(result.getBody())
+				.isEqualTo("[{\"value\":\"F,O]O\"},{\"value\":\"BAR\"}]");
+	}
+
+	@Test
+	public void ndjson() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/upFoos"))
+				.contentType(MediaType.valueOf("application/x-ndjson"))
+				.accept(MediaType.valueOf("application/x-ndjson"))
+				.body("{\"value\":\"foo\"}\n{\"value\":\"bar\"}"), String.class);
+		assertThat(result.getBody())
+				.isEqualTo("{\"value\":\"FOO\"}\n{\"value\":\"BAR\"}\n");
+	}
+
+	@Test
+	public void updates() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/updates")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"one\",\"two\"]"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(test.list).hasSize(2);
+	}
+
+	@Test
+	public void sse() throws Exception {
+		ResponseEntity<String> result = rest.exchange(
+				RequestEntity.get(new URI("/words")).accept(EVENT_STREAM).build(),
+				String.class);
+		assertThat(result.getBody()).isEqualTo("data:foo\n\ndata:bar\n\n");
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		private List<String> list = new ArrayList<>();
+
+		@Bean
+		public Function<Flux<String>, Flux<String>> uppercase() {
+			return flux -> flux.map(value -> "[" + value.trim().toUpperCase() + "]");
+		}
+
+		@Bean
+		public Function<Flux<Foo>, Flux<Foo>> upFoos() {
+			return flux -> flux
+					.map(value -> new Foo(value.getValue().trim().toUpperCase()));
+		}
+
+		@Bean
+		public Consumer<Flux<String>> updates() {
+			return flux -> flux.subscribe(value -> list.add(value));
+		}
+
+		@Bean
+		public Supplier<Flux<String>> words() {
+			return () -> Flux.just("foo", "bar");
+		}
+
+	}
+}
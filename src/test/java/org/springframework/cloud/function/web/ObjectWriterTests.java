@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Checks that elements of the declared output type are written with the precomputed
+ * writer for the function, which marks them, instead of a message converter, which does
+ * not.
+ *
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+public class ObjectWriterTests {
+
+	private static final String PRECOMPUTED = "precomputed";
+
+	@Autowired
+	private TestRestTemplate rest;
+
+	@Test
+	public void supplierStream() throws Exception {
+		assertThat(rest.exchange(RequestEntity.get(new URI("/foos"))
+				.accept(MediaType.APPLICATION_JSON).build(), String.class).getBody())
+						.isEqualTo("[{\"value\":\"foo\",\"precomputed\":true},"
+								+ "{\"value\":\"bar\",\"precomputed\":true}]");
+	}
+
+	@Test
+	public void supplierEvents() throws Exception {
+		assertThat(rest.exchange(RequestEntity.get(new URI("/foos"))
+				.accept(MediaType.TEXT_EVENT_STREAM).build(), String.class).getBody())
+						.isEqualTo("data:{\"value\":\"foo\",\"precomputed\":true}\n\n"
+								+ "data:{\"value\":\"bar\",\"precomputed\":true}\n\n");
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		@Bean
+		@SuppressWarnings("serial")
+		public ObjectMapper objectMapper() {
+			return new ObjectMapper() {
+				@Override
+				public ObjectWriter writerFor(JavaType type) {
+					return super.writerFor(type).withAttribute(PRECOMPUTED, true);
+				}
+			};
+		}
+
+		@Bean
+		public Supplier<Flux<Foo>> foos() {
+			return () -> Flux.just(new Foo("foo"), new Foo("bar"));
+		}
+
+	}
+
+	@JsonSerialize(using = FooSerializer.class)
+	static class Foo {
+
+		private final String value;
+
+		Foo(String value) {
+			this.value = value;
+		}
+
+		public String getValue() {
+			return this.value;
+		}
+
+	}
+
+	static class FooSerializer extends JsonSerializer<Foo> {
+
+		@Override
+		public void serialize(Foo foo, JsonGenerator generator,
+				SerializerProvider provider) throws IOException {
+			generator.writeStartObject();
+			generator.writeStringField("value", foo.getValue());
+			if (provider.getAttribute(PRECOMPUTED) != null) {
+				generator.writeBooleanField(PRECOMPUTED, true);
+			}
+			generator.writeEndObject();
+		}
+
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.functions.square.parallel.enabled=true",
+		"spring.cloud.function.web.functions.square.parallel.parallelism=4",
+		"spring.cloud.function.web.functions.square.parallel.prefetch=8",
+		// Its own threads, so there is more than one even on a single processor
+		"spring.cloud.function.web.functions.square.execution.type=fixed",
+		"spring.cloud.function.web.functions.square.execution.threads=4" })
+public class ParallelTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private TestConfiguration test;
+
+	@Before
+	public void init() {
+		test.threads.clear();
+	}
+
+	@Test
+	public void ordered() throws Exception {
+		List<Integer> input = new ArrayList<>();
+		List<Integer> squares = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			input.add(i);
+			squares.add(i * i);
+		}
+		ResponseEntity<String> result = rest.exchange(
+				RequestEntity.post(new URI("/square"))
+						.contentType(MediaType.APPLICATION_JSON).body(input.toString()),
+				String.class);
+		assertThat(result.getBody()).isEqualTo(squares.toString().replace(" ", ""));
+	}
+
+	@Test
+	public void moreThanOneThread() throws Exception {
+		List<Integer> input = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			input.add(i);
+		}
+		rest.exchange(RequestEntity.post(new URI("/square"))
+				.contentType(MediaType.APPLICATION_JSON).body(input.toString()),
+				String.class);
+		assertThat(test.threads.size()).isGreaterThan(1);
+		for (String thread : test.threads) {
+			assertThat(thread).startsWith("function-square-");
+		}
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		private Set<String> threads = ConcurrentHashMap.newKeySet();
+
+		@Bean
+		public Function<Integer, Integer> square() {
+			return value -> {
+				threads.add(Thread.currentThread().getName());
+				try {
+					// Slow enough that the chunks overlap
+					Thread.sleep(5L);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return value * value;
+			};
+		}
+
+	}
+}
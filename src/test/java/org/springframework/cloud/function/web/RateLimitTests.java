@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+
+import java.net.URI;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.functions.rated.rate.enabled=true",
+		"spring.cloud.function.web.functions.rated.rate.limit=1",
+		"spring.cloud.function.web.functions.rated.rate.burst=2",
+		"spring.cloud.function.web.functions.rated.rate.key-header=X-Client" })
+public class RateLimitTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+
+	@Test
+	public void rated() throws Exception {
+		assertThat(rated("foo").getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(rated("foo").getStatusCode()).isEqualTo(HttpStatus.OK);
+		ResponseEntity<String> response = rated("foo");
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+		assertThat(response.getHeaders().getFirst("Retry-After")).isEqualTo("1");
+		// Another client has its own bucket
+		assertThat(rated("bar").getStatusCode()).isEqualTo(HttpStatus.OK);
+	}
+
+	private ResponseEntity<String> rated(String client) throws Exception {
+		return rest.exchange(RequestEntity.get(new URI("/rated/foo"))
+				.header("X-Client", client).build(), String.class);
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		@Bean
+		public Function<String, String> rated() {
+			return value -> value.toUpperCase();
+		}
+
+	}
+}
@@ -243,6 +243,14 @@ public class RestApplicationTests {
 		assertThat(result.getBody()).isEqualTo("[{\"value\":\"FOO\"},{\"value\":\"BAR\"}]");
 	}
 
+	@Test
+	public void uppercaseNull() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"foo\",null]"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
 	@Test
 	public void bareUppercase() throws Exception {
 		ResponseEntity<String> result = rest.exchange(RequestEntity
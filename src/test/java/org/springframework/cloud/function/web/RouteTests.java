@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cloud.function.web.flux.FunctionHandlerMapping;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+public class RouteTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private FunctionHandlerMapping mapping;
+
+	@Test
+	public void exactRoutesOnly() throws Exception {
+		Map<String, Map<String, ?>> routes = routes();
+		assertThat(routes.get("GET")).containsKeys("/words", "/get/more");
+		assertThat(routes.get("POST")).containsKeys("/uppercase");
+		for (Map<String, ?> byPath : routes.values()) {
+			for (String path : byPath.keySet()) {
+				assertThat(path).doesNotContain("{");
+			}
+		}
+	}
+
+	@Test
+	public void exactGet() throws Exception {
+		assertThat(rest.getForObject("/words", String.class))
+				.isEqualTo("[\"foo\",\"bar\"]");
+		assertThat(rest.getForObject("/get/more", String.class))
+				.isEqualTo("[\"foo\",\"bar\"]");
+	}
+
+	@Test
+	public void exactPost() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"foo\"]"), String.class);
+		assertThat(result.getBody()).isEqualTo("[\"FOO\"]");
+	}
+
+	@Test
+	public void patternFallsThrough() throws Exception {
+		assertThat(rest.getForObject("/uppercase/foo", String.class)).isEqualTo("FOO");
+	}
+
+	@Test
+	public void exactRouteWithWrongMethodFallsThrough() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/words")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"foo\"]"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.METHOD_NOT_ALLOWED);
+	}
+
+	@Test
+	public void unknown() throws Exception {
+		ResponseEntity<String> result = rest.exchange(
+				RequestEntity.get(new URI("/missing")).build(), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	public void metricsEndpointIsOptIn() throws Exception {
+		ResponseEntity<String> result = rest.exchange(
+				RequestEntity.get(new URI("/function-metrics")).build(), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Map<String, ?>> routes() {
+		return (Map<String, Map<String, ?>>) ReflectionTestUtils.getField(mapping,
+				"routes");
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		@Bean({ "words", "get/more" })
+		public Supplier<Flux<String>> words() {
+			return () -> Flux.just("foo", "bar");
+		}
+
+		@Bean
+		public Function<String, String> uppercase() {
+			return value -> value.toUpperCase();
+		}
+
+	}
+}
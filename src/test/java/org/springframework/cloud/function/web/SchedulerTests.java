@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cloud.function.web.flux.FunctionSchedulers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.functions.thread.execution.type=fixed",
+		"spring.cloud.function.web.functions.word.execution.type=virtual",
+		"spring.cloud.function.web.functions.word.execution.threads=2",
+		"spring.cloud.function.web.functions.busy.execution.type=fixed",
+		"spring.cloud.function.web.functions.busy.execution.threads=1",
+		"spring.cloud.function.web.functions.busy.execution.queue-capacity=1" })
+public class SchedulerTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private FunctionSchedulers schedulers;
+
+	@Test
+	public void fixed() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/thread")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"foo\"]"), String.class);
+		assertThat(result.getBody()).startsWith("[\"foo:function-thread-");
+	}
+
+	@Test
+	public void single() throws Exception {
+		assertThat(rest.getForObject("/thread/foo", String.class))
+				.startsWith("foo:function-thread-");
+	}
+
+	@Test
+	public void virtual() throws Exception {
+		assertThat(rest.getForObject("/word", String.class)).isEqualTo("[\"foo\"]");
+	}
+
+	@Test
+	public void saturated() throws Exception {
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Scheduler scheduler = schedulers.scheduler("busy");
+		try {
+			// One task on the only thread and one in the queue
+			scheduler.schedule(() -> {
+				running.countDown();
+				await(release);
+			});
+			scheduler.schedule(() -> await(release));
+			assertThat(running.await(10, TimeUnit.SECONDS)).isTrue();
+			assertThat(rest.getForEntity("/busy/foo", String.class).getStatusCode())
+					.isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		finally {
+			release.countDown();
+		}
+		assertThat(rest.getForObject("/busy/foo", String.class)).isEqualTo("FOO");
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void containerThread() throws Exception {
+		assertThat(rest.getForObject("/caller/foo", String.class))
+				.doesNotContain("function-");
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		@Bean
+		public Function<String, String> thread() {
+			return value -> value + ":" + Thread.currentThread().getName();
+		}
+
+		@Bean
+		public Function<String, String> busy() {
+			return value -> value.toUpperCase();
+		}
+
+		@Bean
+		public Function<String, String> caller() {
+			return value -> value + ":" + Thread.currentThread().getName();
+		}
+
+		@Bean
+		public Supplier<Flux<String>> word() {
+			return () -> Flux.just("foo");
+		}
+
+	}
+}
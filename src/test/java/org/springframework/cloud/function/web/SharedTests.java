@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.functions.ticks.shared.enabled=true",
+		"spring.cloud.function.web.functions.events.shared.enabled=true",
+		"spring.cloud.function.web.functions.events.shared.replay=2",
+		"spring.cloud.function.web.functions.events.timeout=1000" })
+public class SharedTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private TestConfiguration test;
+
+	@Before
+	public void init() {
+		test.ticks.set(0);
+		test.events.set(0);
+	}
+
+	@Test
+	public void concurrentClientsShareOneSubscription() throws Exception {
+		CompletableFuture<String> first = CompletableFuture
+				.supplyAsync(() -> rest.getForObject("/ticks", String.class));
+		CompletableFuture<String> second = CompletableFuture
+				.supplyAsync(() -> rest.getForObject("/ticks", String.class));
+		assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("[\"foo\",\"bar\"]");
+		assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo("[\"foo\",\"bar\"]");
+		assertThat(test.ticks.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void reconnectsWhenTheLastClientHasGone() throws Exception {
+		assertThat(rest.getForObject("/ticks", String.class))
+				.isEqualTo("[\"foo\",\"bar\"]");
+		assertThat(rest.getForObject("/ticks", String.class))
+				.isEqualTo("[\"foo\",\"bar\"]");
+		assertThat(test.ticks.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void lateJoinerSeesReplay() throws Exception {
+		CompletableFuture<String> first = CompletableFuture
+				.supplyAsync(() -> rest.getForObject("/events", String.class));
+		// Join while the first client is still connected (until its idle timeout)
+		Thread.sleep(300L);
+		String second = rest.getForObject("/events", String.class);
+		assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("[\"a\",\"b\",\"c\"]");
+		assertThat(second).isEqualTo("[\"b\",\"c\"]");
+		assertThat(test.events.get()).isEqualTo(1);
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		private AtomicInteger ticks = new AtomicInteger();
+
+		private AtomicInteger events = new AtomicInteger();
+
+		@Bean
+		public Supplier<Flux<String>> ticks() {
+			return () -> {
+				// Called once per upstream subscription
+				ticks.incrementAndGet();
+				// Late enough for a second client to connect before anything is sent
+				return Flux.just("foo", "bar").delaySubscription(Duration.ofMillis(500));
+			};
+		}
+
+		@Bean
+		public Supplier<Flux<String>> events() {
+			return () -> {
+				events.incrementAndGet();
+				// Stays open (until the idle timeout) after the last element
+				return Flux.just("a", "b", "c").concatWith(Flux.never());
+			};
+		}
+
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.cloud.function.web.RestApplicationTests.Foo;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * @author Dave Syer
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+		"spring.cloud.function.web.streaming=true",
+		"spring.cloud.function.web.escape-strings=true" })
+public class StreamingTests {
+
+	@LocalServerPort
+	private int port;
+	@Autowired
+	private TestRestTemplate rest;
+	@Autowired
+	private TestConfiguration test;
+
+	@Before
+	public void init() {
+		test.list.clear();
+	}
+
+	@Test
+	public void uppercase() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"foo\",\"bar\"]"), String.class);
+		assertThat(result.getBody()).isEqualTo("[\"[FOO]\",\"[BAR]\"]");
+	}
+
+	@Test
+	public void uppercaseFoos() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/upFoos")).contentType(MediaType.APPLICATION_JSON)
+				.body("[{\"value\":\"foo\"},\n{\"value\":\"bar\"}]"), String.class);
+		assertThat(result.getBody()).isEqualTo("[{\"value\":\"FOO\"},{\"value\":\"BAR\"}]");
+	}
+
+	@Test
+	public void singleValue() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.body("\"foo\""), String.class);
+		assertThat(result.getBody()).isEqualTo("[\"[FOO]\"]");
+	}
+
+	@Test
+	public void emptyArray() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.body("[]"), String.class);
+		assertThat(result.getBody()).isEqualTo("[]");
+	}
+
+	@Test
+	public void updates() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/updates")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"one\",\"two\"]"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(test.list).hasSize(2);
+		assertThat(result.getBody()).isEqualTo("[\"one\",\"two\"]");
+	}
+
+	@Test
+	public void nullUpdate() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/updates")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"one\",null]"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	public void nullNdjsonUpdate() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/updates"))
+				.contentType(MediaType.valueOf("application/x-ndjson"))
+				.body("\"one\"\nnull\n"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	public void updatesOnAnotherThread() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/delayed")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"one\",\"two\"]"), String.class);
+		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(result.getBody()).isEqualTo("[\"one\",\"two\"]");
+	}
+
+	@Test
+	public void ndjsonInput() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/upFoos"))
+				.contentType(MediaType.valueOf("application/x-ndjson"))
+				.body("{\"value\":\"foo\"}\n\n{\"value\":\"bar\"}\n"), String.class);
+		assertThat(result.getBody()).isEqualTo("[{\"value\":\"FOO\"},{\"value\":\"BAR\"}]");
+	}
+
+	@Test
+	public void ndjsonOutput() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/upFoos")).contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.valueOf("application/x-ndjson"))
+				.body("[{\"value\":\"foo\"},{\"value\":\"bar\"}]"), String.class);
+		assertThat(result.getHeaders().getContentType().toString())
+				.startsWith("application/x-ndjson");
+		assertThat(result.getBody())
+				.isEqualTo("{\"value\":\"FOO\"}\n{\"value\":\"BAR\"}\n");
+	}
+
+	@Test
+	public void ndjsonStringsAreEscaped() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase"))
+				.contentType(MediaType.valueOf("application/x-ndjson"))
+				.accept(MediaType.valueOf("application/x-ndjson"))
+				.body("\"say \\\"hi\\\"\\nback\\\\slash\"\n"), String.class);
+		assertThat(result.getBody())
+				.isEqualTo("\"[SAY \\\"HI\\\"\\nBACK\\\\SLASH]\"\n");
+	}
+
+	@Test
+	public void jsonStringsAreEscaped() throws Exception {
+		ResponseEntity<String> result = rest.exchange(RequestEntity
+				.post(new URI("/uppercase")).contentType(MediaType.APPLICATION_JSON)
+				.body("[\"a \\\"quote\\\"\"]"), String.class);
+		assertThat(result.getBody()).isEqualTo("[\"[A \\\"QUOTE\\\"]\"]");
+	}
+
+	@Test
+	public void badContentType() throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL(
+				"http://localhost:" + port + "/uppercase").openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "not a media type");
+		connection.setDoOutput(true);
+		connection.getOutputStream().write("[\"foo\"]".getBytes());
+		assertThat(connection.getResponseCode())
+				.isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value());
+	}
+
+	@Test
+	public void smile() throws Exception {
+		ObjectMapper smile = new ObjectMapper(new SmileFactory());
+		MediaType type = MediaType.valueOf("application/x-jackson-smile");
+		ResponseEntity<byte[]> result = rest.exchange(RequestEntity
+				.post(new URI("/upFoos")).contentType(type).accept(type)
+				.body(smile.writeValueAsBytes(
+						Arrays.asList(new Foo("foo"), new Foo("bar")))),
+				byte[].class);
+		assertThat(result.getHeaders().getContentType().isCompatibleWith(type))
+				.isTrue();
+		assertThat(smile.readValue(result.getBody(), Foo[].class))
+				.extracting("value").containsExactly("FOO", "BAR");
+	}
+
+	@Test
+	public void cbor() throws Exception {
+		ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+		MediaType type = MediaType.valueOf("application/cbor");
+		ResponseEntity<byte[]> result = rest.exchange(RequestEntity
+				.post(new URI("/upFoos")).contentType(type).accept(type)
+				.body(cbor.writeValueAsBytes(
+						Arrays.asList(new Foo("foo"), new Foo("bar")))),
+				byte[].class);
+		assertThat(result.getHeaders().getContentType().isCompatibleWith(type))
+				.isTrue();
+		assertThat(cbor.readValue(result.getBody(), Foo[].class))
+				.extracting("value").containsExactly("FOO", "BAR");
+	}
+
+	@Test
+	public void singleCbor() throws Exception {
+		ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+		MediaType type = MediaType.valueOf("application/cbor");
+		ResponseEntity<byte[]> result = rest.exchange(
+				RequestEntity.get(new URI("/upFoos/foo")).accept(type).build(),
+				byte[].class);
+		assertThat(result.getHeaders().getContentType().isCompatibleWith(type))
+				.isTrue();
+		// A single value, not an array
+		assertThat(cbor.readValue(result.getBody(), Foo.class).getValue())
+				.isEqualTo("FOO");
+	}
+
+	@Test
+	public void binary() throws Exception {
+		ResponseEntity<byte[]> result = rest.exchange(RequestEntity
+				.post(new URI("/shout")).contentType(MediaType.APPLICATION_OCTET_STREAM)
+				.body("hello".getBytes()), byte[].class);
+		assertThat(result.getHeaders().getContentType()
+				.isCompatibleWith(MediaType.APPLICATION_OCTET_STREAM)).isTrue();
+		assertThat(new String(result.getBody())).isEqualTo("HELLO");
+	}
+
+	@Test
+	public void binarySupplier() throws Exception {
+		ResponseEntity<byte[]> result = rest.exchange(RequestEntity
+				.get(new URI("/chunks")).accept(MediaType.APPLICATION_OCTET_STREAM)
+				.build(), byte[].class);
+		assertThat(result.getHeaders().getContentType()
+				.isCompatibleWith(MediaType.APPLICATION_OCTET_STREAM)).isTrue();
+		// The chunks are passed through as they are, not as JSON (or base64)
+		assertThat(new String(result.getBody())).isEqualTo("hello world");
+	}
+
+	@Test
+	public void byteBufferSupplier() throws Exception {
+		ResponseEntity<byte[]> result = rest.exchange(RequestEntity
+				.get(new URI("/buffers")).accept(MediaType.APPLICATION_OCTET_STREAM)
+				.build(), byte[].class);
+		assertThat(new String(result.getBody())).isEqualTo("hello world");
+	}
+
+	@Test
+	public void byteBuffers() throws Exception {
+		ResponseEntity<byte[]> result = rest.exchange(RequestEntity
+				.post(new URI("/echo")).contentType(MediaType.APPLICATION_OCTET_STREAM)
+				.body("hello".getBytes()), byte[].class);
+		assertThat(new String(result.getBody())).isEqualTo("hello");
+	}
+
+	@EnableAutoConfiguration
+	@org.springframework.boot.test.context.TestConfiguration
+	protected static class TestConfiguration {
+
+		private List<String> list = new ArrayList<>();
+
+		@Bean
+		public Function<Flux<String>, Flux<String>> uppercase() {
+			return flux -> flux.map(value -> "[" + value.trim().toUpperCase() + "]");
+		}
+
+		@Bean
+		public Function<Flux<Foo>, Flux<Foo>> upFoos() {
+			return flux -> flux
+					.map(value -> new Foo(value.getValue().trim().toUpperCase()));
+		}
+
+		@Bean
+		public Function<Flux<byte[]>, Flux<byte[]>> shout() {
+			return flux -> flux.map(value -> new String(value).toUpperCase().getBytes());
+		}
+
+		@Bean
+		public Function<Flux<ByteBuffer>, Flux<ByteBuffer>> echo() {
+			return flux -> flux;
+		}
+
+		@Bean
+		public Supplier<Flux<byte[]>> chunks() {
+			return () -> Flux.just("hello ".getBytes(), "world".getBytes());
+		}
+
+		@Bean
+		public Supplier<Flux<ByteBuffer>> buffers() {
+			return () -> Flux.just(ByteBuffer.wrap("hello ".getBytes()),
+					ByteBuffer.wrap("world".getBytes()));
+		}
+
+		@Bean
+		public Consumer<Flux<String>> updates() {
+			return flux -> flux.subscribe(value -> list.add(value));
+		}
+
+		@Bean
+		public Consumer<Flux<String>> delayed() {
+			return flux -> flux.delaySubscription(Duration.ofMillis(100))
+					.subscribeOn(Schedulers.elastic()).subscribe();
+		}
+
+	}
+}
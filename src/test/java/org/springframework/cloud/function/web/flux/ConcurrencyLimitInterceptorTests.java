@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.function.web.flux.ConcurrencyLimits.Limiter;
+import org.springframework.cloud.function.web.flux.request.DelegateHandler;
+import org.springframework.cloud.function.web.flux.request.FluxHandlerMethodArgumentResolver;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ConcurrencyLimitInterceptorTests {
+
+	private ConcurrencyLimits limits = new ConcurrencyLimits();
+
+	private ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(
+			limits);
+
+	private StaticListableBeanFactory factory = new StaticListableBeanFactory();
+
+	private Limiter limiter;
+
+	private MockHttpServletRequest request;
+
+	private MockHttpServletResponse response = new MockHttpServletResponse();
+
+	@Before
+	public void init() {
+		factory.addBean("conversionService", new DefaultConversionService());
+		limits.configure("foo", 1, 1, 1, 1);
+		limiter = limits.limiter("foo");
+		request = request();
+	}
+
+	@Test
+	public void releasedWhenSynchronousRequestCompletes() throws Exception {
+		assertThat(interceptor.preHandle(request, response, null)).isTrue();
+		assertThat(limiter.getInFlight()).isEqualTo(1);
+		interceptor.afterCompletion(request, response, null, null);
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+	}
+
+	@Test
+	public void rejectedOverTheLimit() throws Exception {
+		assertThat(interceptor.preHandle(request, response, null)).isTrue();
+		MockHttpServletResponse rejected = new MockHttpServletResponse();
+		assertThat(interceptor.preHandle(request(), rejected, null)).isFalse();
+		assertThat(rejected.getStatus())
+				.isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+		assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+	}
+
+	@Test
+	public void heldUntilTheAsyncPartCompletes() throws Exception {
+		MockAsyncContext context = startAsync();
+		assertThat(limiter.getInFlight()).isEqualTo(1);
+		context.complete();
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+	}
+
+	@Test
+	public void releasedWhenTheClientGoesAway() throws Exception {
+		MockAsyncContext context = startAsync();
+		// No async dispatch, just an error from the container
+		for (AsyncListener listener : context.getListeners()) {
+			listener.onError(new AsyncEvent(context));
+		}
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+		context.complete();
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+	}
+
+	@Test
+	public void releasedOnceAfterAsyncDispatch() throws Exception {
+		MockAsyncContext context = startAsync();
+		// The async dispatch finishes the request, then the container completes it
+		request.setAsyncStarted(false);
+		interceptor.afterCompletion(request, response, null, null);
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+		context.complete();
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+	}
+
+	private MockAsyncContext startAsync() throws Exception {
+		assertThat(interceptor.preHandle(request, response, null)).isTrue();
+		request.setAsyncSupported(true);
+		request.startAsync();
+		interceptor.afterConcurrentHandlingStarted(request, response, null);
+		// Nothing released yet by the original dispatch
+		interceptor.afterCompletion(request, response, null, null);
+		return (MockAsyncContext) request.getAsyncContext();
+	}
+
+	private MockHttpServletRequest request() {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/foo");
+		request.setAttribute(FluxHandlerMethodArgumentResolver.HANDLER,
+				new DelegateHandler<Object>(factory, "foo") {
+				});
+		return request;
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.cloud.function.web.flux.FunctionSchedulers.Type;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class FunctionSchedulersTests {
+
+	private FunctionSchedulers schedulers = new FunctionSchedulers();
+
+	private CountDownLatch release = new CountDownLatch(1);
+
+	@After
+	public void close() throws Exception {
+		release.countDown();
+		schedulers.destroy();
+	}
+
+	@Test
+	public void boundedElasticAddsThreadsBeforeQueueing() throws Exception {
+		schedulers.configure("foo", Type.BOUNDED_ELASTIC, 3, 10);
+		CountDownLatch running = block("foo", 3);
+		// All three run at once, so none of them was left in the queue
+		assertThat(running.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(schedulers.hasCapacity("foo")).isTrue();
+		block("foo", 10);
+		assertThat(schedulers.hasCapacity("foo")).isFalse();
+	}
+
+	@Test
+	public void fixedQueuesBehindItsThreads() throws Exception {
+		schedulers.configure("foo", Type.FIXED, 1, 1);
+		assertThat(block("foo", 1).await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(schedulers.hasCapacity("foo")).isTrue();
+		block("foo", 1);
+		assertThat(schedulers.hasCapacity("foo")).isFalse();
+	}
+
+	@Test
+	public void unknownFunctionHasCapacity() {
+		assertThat(schedulers.hasCapacity("foo")).isTrue();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyQueue() {
+		schedulers.configure("foo", Type.FIXED, 1, 0);
+	}
+
+	private CountDownLatch block(String name, int count) {
+		CountDownLatch running = new CountDownLatch(count);
+		Scheduler scheduler = schedulers.scheduler(name);
+		for (int i = 0; i < count; i++) {
+			scheduler.schedule(() -> {
+				running.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		return running;
+	}
+
+}
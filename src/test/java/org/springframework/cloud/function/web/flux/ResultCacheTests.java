@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ResultCacheTests {
+
+	@Test
+	public void popularKeyEvictsEldest() {
+		ResultCache cache = new ResultCache(2, 0, 0);
+		miss(cache, "a", 1);
+		miss(cache, "b", 1);
+		miss(cache, "c", 3);
+		assertThat(cache.getEvictions()).isEqualTo(1);
+		assertThat(cache.getRejections()).isEqualTo(0);
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.get("b")).isEqualTo("B");
+		assertThat(cache.get("c")).isEqualTo("C");
+	}
+
+	@Test
+	public void unpopularKeyIsRejected() {
+		ResultCache cache = new ResultCache(2, 0, 0);
+		miss(cache, "a", 3);
+		miss(cache, "b", 3);
+		// Never asked for, so less popular than anything in the cache
+		cache.put("c", "C");
+		assertThat(cache.getRejections()).isEqualTo(1);
+		assertThat(cache.getEvictions()).isEqualTo(0);
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.get("a")).isEqualTo("A");
+		assertThat(cache.get("b")).isEqualTo("B");
+		assertThat(cache.get("c")).isNull();
+	}
+
+	@Test
+	public void maxWeight() {
+		ResultCache cache = new ResultCache(100, 10, 0);
+		cache.put("a", "12345");
+		cache.put("b", "12345");
+		miss(cache, "c", 5);
+		cache.put("c", "123");
+		// Only one entry had to go to make room
+		assertThat(cache.getEvictions()).isEqualTo(1);
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.get("b")).isEqualTo("12345");
+		assertThat(cache.get("c")).isEqualTo("123");
+		// Too heavy to ever fit
+		cache.put("d", "12345678901");
+		assertThat(cache.getRejections()).isEqualTo(1);
+		assertThat(cache.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void existingKeyIsReplacedInAFullCache() {
+		ResultCache cache = new ResultCache(2, 0, 0);
+		miss(cache, "a", 1);
+		miss(cache, "b", 3);
+		// Less popular than b, but already in the cache
+		cache.put("a", "AA");
+		assertThat(cache.getRejections()).isEqualTo(0);
+		assertThat(cache.getEvictions()).isEqualTo(0);
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.get("a")).isEqualTo("AA");
+		assertThat(cache.get("b")).isEqualTo("B");
+	}
+
+	@Test
+	public void heavierValueForExistingKeyMakesRoom() {
+		ResultCache cache = new ResultCache(100, 6, 0);
+		cache.put("a", "123");
+		miss(cache, "b", 3);
+		cache.put("b", "123");
+		// Still cached, even though a is less popular than b
+		cache.put("a", "1234");
+		assertThat(cache.getRejections()).isEqualTo(0);
+		assertThat(cache.getEvictions()).isEqualTo(1);
+		assertThat(cache.get("a")).isEqualTo("1234");
+		assertThat(cache.get("b")).isNull();
+	}
+
+	@Test
+	public void ttl() throws Exception {
+		ResultCache cache = new ResultCache(10, 0, 50);
+		cache.put("a", "A");
+		assertThat(cache.get("a")).isEqualTo("A");
+		Thread.sleep(100L);
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void expiredEntryIsEvictedWhateverItsPopularity() throws Exception {
+		ResultCache cache = new ResultCache(1, 0, 50);
+		miss(cache, "a", 5);
+		Thread.sleep(100L);
+		cache.put("b", "B");
+		assertThat(cache.getEvictions()).isEqualTo(1);
+		assertThat(cache.get("b")).isEqualTo("B");
+	}
+
+	@Test
+	public void maxSizeZeroStoresNothing() {
+		ResultCache cache = new ResultCache(0, 0, 0);
+		miss(cache, "a", 3);
+		assertThat(cache.size()).isEqualTo(0);
+		assertThat(cache.get("a")).isNull();
+	}
+
+	/**
+	 * Look up a key a number of times (so that it becomes that popular), and then
+	 * store its value as if it had been computed.
+	 */
+	private void miss(ResultCache cache, String key, int count) {
+		for (int i = 0; i < count; i++) {
+			assertThat(cache.get(key)).isNull();
+		}
+		cache.put(key, key.toUpperCase());
+	}
+
+}
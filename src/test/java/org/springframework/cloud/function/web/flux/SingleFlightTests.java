@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.MonoProcessor;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class SingleFlightTests {
+
+	private SingleFlight flights = new SingleFlight();
+
+	private MonoProcessor<Object> upstream = MonoProcessor.create();
+
+	private AtomicInteger subscriptions = new AtomicInteger();
+
+	private AtomicBoolean cancelled = new AtomicBoolean();
+
+	@Before
+	public void init() {
+		flights.configure("foo");
+	}
+
+	@Test
+	public void valueReachesEveryWaiter() {
+		Waiter first = join();
+		Waiter second = join();
+		upstream.onNext("A");
+		assertThat(first.value).isEqualTo("A");
+		assertThat(second.value).isEqualTo("A");
+		assertThat(subscriptions.get()).isEqualTo(1);
+		assertThat(flights.getInFlight("foo")).isEqualTo(0);
+	}
+
+	@Test
+	public void errorReachesEveryWaiter() {
+		Waiter first = join();
+		Waiter second = join();
+		IllegalStateException error = new IllegalStateException("Planned");
+		upstream.onError(error);
+		assertThat(first.error).isSameAs(error);
+		assertThat(second.error).isSameAs(error);
+		assertThat(subscriptions.get()).isEqualTo(1);
+		assertThat(flights.getInFlight("foo")).isEqualTo(0);
+	}
+
+	@Test
+	public void oneWaiterCancellingLeavesTheOthers() {
+		Waiter first = join();
+		Waiter second = join();
+		first.subscription.cancel();
+		assertThat(cancelled.get()).isFalse();
+		assertThat(flights.getInFlight("foo")).isEqualTo(1);
+		upstream.onNext("A");
+		assertThat(second.value).isEqualTo("A");
+		assertThat(second.complete).isTrue();
+		assertThat(first.value).isNull();
+		assertThat(first.error).isNull();
+	}
+
+	@Test
+	public void lastWaiterCancellingCancelsUpstream() {
+		Waiter first = join();
+		Waiter second = join();
+		first.subscription.cancel();
+		second.subscription.cancel();
+		assertThat(cancelled.get()).isTrue();
+		assertThat(flights.getInFlight("foo")).isEqualTo(0);
+		// The next caller starts afresh
+		join();
+		assertThat(subscriptions.get()).isEqualTo(2);
+	}
+
+	private Waiter join() {
+		Waiter waiter = new Waiter();
+		flights.execute("foo", "a",
+				() -> upstream.doOnSubscribe(s -> subscriptions.incrementAndGet())
+						.doOnCancel(() -> cancelled.set(true)))
+				.subscribe(waiter);
+		return waiter;
+	}
+
+	private static class Waiter implements Subscriber<Object> {
+
+		private Subscription subscription;
+
+		private Object value;
+
+		private Throwable error;
+
+		private boolean complete;
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			this.error = error;
+		}
+
+		@Override
+		public void onComplete() {
+			this.complete = true;
+		}
+
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class BinaryDecoderTests {
+
+	private BinaryDecoder decoder = new BinaryDecoder(4);
+
+	@Test
+	public void bodyLargerThanChunk() {
+		List<String> chunks = new ArrayList<>();
+		for (Object chunk : decode(new ByteArrayInputStream(bytes("helloworld")),
+				byte[].class)) {
+			chunks.add(new String((byte[]) chunk, StandardCharsets.UTF_8));
+		}
+		// The last chunk is short
+		assertThat(chunks).containsExactly("hell", "owor", "ld");
+	}
+
+	@Test
+	public void shortReadsAreFilled() {
+		List<String> chunks = new ArrayList<>();
+		for (Object chunk : decode(new TrickleInputStream(bytes("helloworld")),
+				byte[].class)) {
+			chunks.add(new String((byte[]) chunk, StandardCharsets.UTF_8));
+		}
+		assertThat(chunks).containsExactly("hell", "owor", "ld");
+	}
+
+	@Test
+	public void buffersWrapTheChunk() {
+		List<String> chunks = new ArrayList<>();
+		for (Object chunk : decode(new ByteArrayInputStream(bytes("helloworld")),
+				ByteBuffer.class)) {
+			ByteBuffer buffer = (ByteBuffer) chunk;
+			chunks.add(new String(buffer.array(), buffer.position(), buffer.remaining(),
+					StandardCharsets.UTF_8));
+		}
+		assertThat(chunks).containsExactly("hell", "owor", "ld");
+	}
+
+	@Test
+	public void exactMultipleOfChunk() {
+		assertThat(decode(new ByteArrayInputStream(bytes("helloworld!!")), byte[].class))
+				.hasSize(3);
+	}
+
+	@Test
+	public void emptyBody() {
+		assertThat(decode(new ByteArrayInputStream(new byte[0]), byte[].class))
+				.isEmpty();
+	}
+
+	@Test
+	public void readsOnlyWhatIsRequested() {
+		ByteArrayInputStream input = new ByteArrayInputStream(bytes("helloworld"));
+		Object first = this.decoder.decode(input, byte[].class).blockFirst();
+		assertThat(new String((byte[]) first, StandardCharsets.UTF_8)).isEqualTo("hell");
+		// The rest of the body has not been read
+		assertThat(input.available()).isEqualTo(6);
+	}
+
+	@Test
+	public void binaryTypes() {
+		assertThat(BinaryDecoder.isBinary(byte[].class)).isTrue();
+		assertThat(BinaryDecoder.isBinary(ByteBuffer.class)).isTrue();
+		assertThat(BinaryDecoder.isBinary(String.class)).isFalse();
+		assertThat(BinaryDecoder.isBinary(null)).isFalse();
+	}
+
+	private List<Object> decode(InputStream input, Class<?> type) {
+		return this.decoder.decode(input, type).collectList().block();
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Input that hands out at most three bytes per read, like a slow network.
+	 */
+	private static class TrickleInputStream extends ByteArrayInputStream {
+
+		public TrickleInputStream(byte[] bytes) {
+			super(bytes);
+		}
+
+		@Override
+		public synchronized int read(byte[] buffer, int offset, int length) {
+			return super.read(buffer, offset, Math.min(3, length));
+		}
+
+	}
+
+}
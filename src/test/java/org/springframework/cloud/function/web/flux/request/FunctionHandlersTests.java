@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.cloud.function.support.FluxFunction;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class FunctionHandlersTests {
+
+	private AnnotationConfigApplicationContext context;
+
+	private ContextFunctionPostProcessor processor;
+
+	@Before
+	public void init() {
+		context = new AnnotationConfigApplicationContext(
+				ContextFunctionPostProcessor.class, TestConfiguration.class);
+		processor = context.getBean(ContextFunctionPostProcessor.class);
+	}
+
+	@After
+	public void close() {
+		context.close();
+	}
+
+	@Test
+	public void singletonsAreWrappedAtStartup() {
+		assertThat(handlers()).containsKeys("uppercase", "fluxes");
+		assertThat(handlers()).doesNotContainKey("lazy");
+		Object handler = processor.handler("uppercase");
+		assertThat(handler).isInstanceOf(FluxFunction.class);
+		assertThat(processor.<Object>handler("uppercase")).isSameAs(handler);
+	}
+
+	@Test
+	public void fluxFunctionsAreNotWrapped() {
+		assertThat(processor.<Object>handler("fluxes"))
+				.isSameAs(context.getBean("fluxes"));
+	}
+
+	@Test
+	public void lazyBeanIsAddedWithoutLosingOthers() {
+		Object uppercase = processor.handler("uppercase");
+		Object lazy = processor.handler("lazy");
+		assertThat(lazy).isInstanceOf(FluxFunction.class);
+		assertThat(handlers()).containsKeys("uppercase", "fluxes", "lazy");
+		assertThat(processor.<Object>handler("lazy")).isSameAs(lazy);
+		assertThat(processor.<Object>handler("uppercase")).isSameAs(uppercase);
+	}
+
+	@Test
+	public void targetIsTheUnwrappedFunction() {
+		assertThat(processor.<Object>target("uppercase"))
+				.isSameAs(context.getBean("uppercase"));
+		// A lazy bean is registered on first use, with its handler
+		assertThat(processor.<Object>target("lazy")).isSameAs(context.getBean("lazy"));
+		assertThat(handlers()).containsKey("lazy");
+	}
+
+	@Test
+	public void concurrentLookupsShareOneHandler() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> results = new ArrayList<>();
+			for (int i = 0; i < 32; i++) {
+				results.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						return processor.handler("lazy");
+					}
+				}));
+			}
+			Object first = results.get(0).get();
+			for (Future<Object> result : results) {
+				assertThat(result.get()).isSameAs(first);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<Object, Object> handlers() {
+		return (Map<Object, Object>) ReflectionTestUtils.getField(processor, "handlers");
+	}
+
+	@Configuration
+	protected static class TestConfiguration {
+
+		@Bean
+		public Function<String, String> uppercase() {
+			return value -> value.toUpperCase();
+		}
+
+		@Bean
+		public Function<Flux<String>, Flux<String>> fluxes() {
+			return flux -> flux.map(value -> value.toUpperCase());
+		}
+
+		@Bean
+		@Lazy
+		public Function<String, String> lazy() {
+			return value -> value;
+		}
+
+	}
+
+}
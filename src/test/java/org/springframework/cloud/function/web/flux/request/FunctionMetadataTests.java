@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeBindings;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.type.TypeModifier;
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class FunctionMetadataTests {
+
+	private AnnotationConfigApplicationContext context;
+
+	@After
+	public void close() {
+		if (context != null) {
+			context.close();
+		}
+	}
+
+	@Test
+	public void plainFunction() {
+		FunctionMetadata metadata = metadata("length");
+		assertThat(metadata.getName()).isEqualTo("length");
+		assertThat(metadata.getInputType()).isEqualTo(String.class);
+		assertThat(metadata.getOutputType()).isEqualTo(Integer.class);
+		assertThat(metadata.isFlux()).isFalse();
+	}
+
+	@Test
+	public void fluxFunction() {
+		FunctionMetadata metadata = metadata("lists");
+		assertThat(metadata.getInputType()).isEqualTo(List.class);
+		assertThat(metadata.getInputJavaType().isCollectionLikeType()).isTrue();
+		assertThat(metadata.getInputJavaType().getContentType().getRawClass())
+				.isEqualTo(String.class);
+		assertThat(metadata.getOutputType()).isEqualTo(String.class);
+		assertThat(metadata.isFlux()).isTrue();
+	}
+
+	@Test
+	public void fluxSupplier() {
+		FunctionMetadata metadata = metadata("words");
+		assertThat(metadata.getInputType()).isNull();
+		assertThat(metadata.getOutputType()).isEqualTo(String.class);
+		assertThat(metadata.getOutputJavaType().getRawClass()).isEqualTo(String.class);
+		assertThat(metadata.isFlux()).isTrue();
+	}
+
+	@Test
+	public void pojoSupplier() {
+		FunctionMetadata metadata = metadata("foos");
+		assertThat(metadata.getOutputType()).isEqualTo(Foo.class);
+		assertThat(metadata.getOutputJavaType().getRawClass()).isEqualTo(Foo.class);
+	}
+
+	@Test
+	public void consumer() {
+		FunctionMetadata metadata = metadata("sink");
+		assertThat(metadata.getInputType()).isEqualTo(String.class);
+		assertThat(metadata.getInputJavaType().getRawClass()).isEqualTo(String.class);
+		assertThat(metadata.getOutputType()).isNull();
+	}
+
+	@Test
+	public void aliases() {
+		assertThat(metadata("words").getNames()).contains("words", "more");
+	}
+
+	@Test
+	public void applicationTypeFactory() {
+		metadata("length");
+		assertThat(context.getBean(TestConfiguration.class).types)
+				.contains(String.class, Integer.class);
+	}
+
+	@Test
+	public void lazyBeanIsComputedOnce() {
+		FunctionMetadata metadata = metadata("lazy");
+		assertThat(metadata.getInputType()).isEqualTo(String.class);
+		assertThat(processor().metadata("lazy")).isSameAs(metadata);
+	}
+
+	@Test
+	public void unknownSource() {
+		load();
+		assertThat(processor().metadata(new Object())).isNull();
+	}
+
+	private FunctionMetadata metadata(String name) {
+		load();
+		FunctionMetadata metadata = processor().metadata(name);
+		assertThat(metadata).isNotNull();
+		return metadata;
+	}
+
+	private ContextFunctionPostProcessor processor() {
+		return context.getBean(ContextFunctionPostProcessor.class);
+	}
+
+	private void load() {
+		if (context == null) {
+			context = new AnnotationConfigApplicationContext(
+					ContextFunctionPostProcessor.class, TestConfiguration.class);
+		}
+	}
+
+	@Configuration
+	protected static class TestConfiguration {
+
+		private Set<Type> types = new CopyOnWriteArraySet<>();
+
+		@Bean
+		public ObjectMapper objectMapper() {
+			ObjectMapper mapper = new ObjectMapper();
+			mapper.setTypeFactory(
+					TypeFactory.defaultInstance().withModifier(new TypeModifier() {
+						@Override
+						public JavaType modifyType(JavaType type, Type jdkType,
+								TypeBindings context, TypeFactory typeFactory) {
+							types.add(jdkType);
+							return type;
+						}
+					}));
+			return mapper;
+		}
+
+		@Bean
+		public Function<String, Integer> length() {
+			return value -> value.length();
+		}
+
+		@Bean
+		public Function<Flux<List<String>>, Flux<String>> lists() {
+			return flux -> flux.map(value -> value.toString());
+		}
+
+		@Bean({ "words", "more" })
+		public Supplier<Flux<String>> words() {
+			return () -> Flux.just("foo", "bar");
+		}
+
+		@Bean
+		public Supplier<Flux<Foo>> foos() {
+			return () -> Flux.just(new Foo());
+		}
+
+		@Bean
+		public Consumer<Flux<String>> sink() {
+			return flux -> flux.subscribe();
+		}
+
+		@Bean
+		@Lazy
+		public Function<String, String> lazy() {
+			return value -> value;
+		}
+
+	}
+
+	static class Foo {
+
+		private String value;
+
+		public String getValue() {
+			return this.value;
+		}
+
+		public void setValue(String value) {
+			this.value = value;
+		}
+
+	}
+
+}
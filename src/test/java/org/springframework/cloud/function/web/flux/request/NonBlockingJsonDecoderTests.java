@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.request;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class NonBlockingJsonDecoderTests {
+
+	private ObjectReader reader = new ObjectMapper().readerFor(Integer.class);
+
+	@Test
+	public void readsOnlyWhatIsRequested() throws Exception {
+		ChunkedInputStream input = new ChunkedInputStream("[1,", "2,", "3]");
+		Recorder recorder = decode(input);
+		recorder.subscription.request(1);
+		input.listener.onDataAvailable();
+		assertThat(recorder.values).containsExactly(1);
+		// The rest of the body is left with the client until there is demand
+		assertThat(input.remaining()).isEqualTo(2);
+		recorder.subscription.request(5);
+		assertThat(recorder.values).containsExactly(1, 2, 3);
+		input.listener.onAllDataRead();
+		assertThat(recorder.complete).isTrue();
+	}
+
+	@Test
+	public void requestResumesReading() throws Exception {
+		ChunkedInputStream input = new ChunkedInputStream("[1,", "2]");
+		Recorder recorder = decode(input);
+		input.listener.onDataAvailable();
+		assertThat(input.remaining()).isEqualTo(2);
+		recorder.subscription.request(Long.MAX_VALUE);
+		input.listener.onAllDataRead();
+		assertThat(recorder.values).containsExactly(1, 2);
+		assertThat(recorder.complete).isTrue();
+	}
+
+	@Test
+	public void decodingErrorEndsTheFlux() throws Exception {
+		ChunkedInputStream input = new ChunkedInputStream("[1,\"foo\",3]");
+		Recorder recorder = decode(input);
+		recorder.subscription.request(Long.MAX_VALUE);
+		input.listener.onDataAvailable();
+		assertThat(recorder.values).containsExactly(1);
+		assertThat(recorder.error).isInstanceOf(IOException.class);
+		// Nothing else is emitted after the error
+		input.listener.onAllDataRead();
+		assertThat(recorder.values).containsExactly(1);
+		assertThat(recorder.complete).isFalse();
+	}
+
+	@Test
+	public void nullElementEndsTheFlux() throws Exception {
+		ChunkedInputStream input = new ChunkedInputStream("[1,null,3]");
+		Recorder recorder = decode(input);
+		recorder.subscription.request(Long.MAX_VALUE);
+		input.listener.onDataAvailable();
+		assertThat(recorder.values).containsExactly(1);
+		assertThat(recorder.error).isInstanceOf(NullElementException.class);
+		assertThat(recorder.complete).isFalse();
+	}
+
+	@Test
+	public void cancelStopsEmitting() throws Exception {
+		ChunkedInputStream input = new ChunkedInputStream("[1,2,3]");
+		Recorder recorder = decode(input);
+		recorder.subscription.request(1);
+		input.listener.onDataAvailable();
+		recorder.subscription.cancel();
+		recorder.subscription.request(5);
+		input.listener.onAllDataRead();
+		assertThat(recorder.values).containsExactly(1);
+		assertThat(recorder.complete).isFalse();
+	}
+
+	private Recorder decode(ChunkedInputStream input) {
+		MockHttpServletRequest request = new MockHttpServletRequest() {
+			@Override
+			public ServletInputStream getInputStream() {
+				return input;
+			}
+		};
+		Flux<Integer> flux = new NonBlockingJsonDecoder().decode(request, reader,
+				false);
+		Recorder recorder = new Recorder();
+		flux.subscribe(recorder);
+		return recorder;
+	}
+
+	private static class Recorder implements Subscriber<Integer> {
+
+		private final List<Integer> values = new ArrayList<>();
+
+		private Subscription subscription;
+
+		private Throwable error;
+
+		private boolean complete;
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(Integer value) {
+			this.values.add(value);
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			this.error = error;
+		}
+
+		@Override
+		public void onComplete() {
+			this.complete = true;
+		}
+
+	}
+
+	/**
+	 * Input that hands out one chunk per read and is always ready until it runs out.
+	 * The test plays the container and calls the listener.
+	 */
+	private static class ChunkedInputStream extends ServletInputStream {
+
+		private final List<byte[]> chunks = new ArrayList<>();
+
+		private ReadListener listener;
+
+		public ChunkedInputStream(String... chunks) {
+			for (String chunk : Arrays.asList(chunks)) {
+				this.chunks.add(chunk.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		public int remaining() {
+			return this.chunks.size();
+		}
+
+		@Override
+		public boolean isFinished() {
+			return this.chunks.isEmpty();
+		}
+
+		@Override
+		public boolean isReady() {
+			return !this.chunks.isEmpty();
+		}
+
+		@Override
+		public void setReadListener(ReadListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			if (this.chunks.isEmpty()) {
+				return -1;
+			}
+			byte[] chunk = this.chunks.remove(0);
+			System.arraycopy(chunk, 0, buffer, offset, chunk.length);
+			return chunk.length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
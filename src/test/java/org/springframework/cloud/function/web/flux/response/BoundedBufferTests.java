@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import org.springframework.cloud.function.web.flux.metrics.FunctionMeter;
+import org.springframework.cloud.function.web.flux.response.OverflowPolicy.Strategy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class BoundedBufferTests {
+
+	private FunctionMeter meter = new FunctionMeter("foo");
+
+	@Test
+	public void fastSubscriberSeesEverything() {
+		SlowSubscriber subscriber = subscribe(Strategy.DROP_OLDEST, Long.MAX_VALUE);
+		assertThat(subscriber.values).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+		assertThat(subscriber.complete).isTrue();
+		assertThat(meter.getDropped()).isEqualTo(0);
+	}
+
+	@Test
+	public void dropOldest() {
+		SlowSubscriber subscriber = subscribe(Strategy.DROP_OLDEST, 2);
+		assertThat(subscriber.values).containsExactly(1, 2);
+		assertThat(subscriber.complete).isFalse();
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertThat(subscriber.values).containsExactly(1, 2, 8, 9, 10);
+		assertThat(subscriber.complete).isTrue();
+		assertThat(meter.getDropped()).isEqualTo(5);
+		assertThat(meter.getConflated()).isEqualTo(0);
+	}
+
+	@Test
+	public void latest() {
+		SlowSubscriber subscriber = subscribe(Strategy.LATEST, 0);
+		assertThat(subscriber.values).isEmpty();
+		subscriber.subscription.request(Long.MAX_VALUE);
+		// The buffer was emptied on 4, 7 and 10
+		assertThat(subscriber.values).containsExactly(10);
+		assertThat(subscriber.complete).isTrue();
+		assertThat(meter.getConflated()).isEqualTo(9);
+		assertThat(meter.getDropped()).isEqualTo(0);
+	}
+
+	@Test
+	public void disconnect() {
+		SlowSubscriber subscriber = subscribe(Strategy.DISCONNECT, 1);
+		assertThat(subscriber.values).containsExactly(1);
+		assertThat(subscriber.error).isInstanceOf(IllegalStateException.class);
+		assertThat(subscriber.cancelled).isTrue();
+		assertThat(meter.getDisconnected()).isEqualTo(1);
+	}
+
+	/**
+	 * Subscribe to ten elements through a buffer of three, asking for only some of
+	 * them at first.
+	 */
+	private SlowSubscriber subscribe(Strategy strategy, long initial) {
+		SlowSubscriber subscriber = new SlowSubscriber(initial);
+		Flux<Integer> source = Flux.range(1, 10)
+				.doOnCancel(() -> subscriber.cancelled = true);
+		new BoundedBuffer<>(source, new OverflowPolicy(3, strategy), meter)
+				.subscribe(subscriber);
+		return subscriber;
+	}
+
+	private static class SlowSubscriber implements Subscriber<Integer> {
+
+		private final long initial;
+
+		private final List<Integer> values = new ArrayList<>();
+
+		private Subscription subscription;
+
+		private Throwable error;
+
+		private boolean complete;
+
+		private boolean cancelled;
+
+		public SlowSubscriber(long initial) {
+			this.initial = initial;
+		}
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+			if (this.initial > 0) {
+				subscription.request(this.initial);
+			}
+		}
+
+		@Override
+		public void onNext(Integer value) {
+			this.values.add(value);
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			this.error = error;
+		}
+
+		@Override
+		public void onComplete() {
+			this.complete = true;
+		}
+
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.cloud.function.web.flux.response.ResponseBodyWriter.Format;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ResponseBodyEmitterSubscriberTests {
+
+	private ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+	private IdleTimer idleTimer = new IdleTimer(10L, 16);
+
+	private ExecutorService callbacks = Executors
+			.newCachedThreadPool(new CustomizableThreadFactory("test-stream-"));
+
+	private RecordingEmitter emitter = new RecordingEmitter();
+
+	@After
+	public void close() {
+		timer.shutdownNow();
+		idleTimer.stop();
+		callbacks.shutdownNow();
+	}
+
+	@Test
+	public void heartbeatsAreSentOffTheTimerThread() throws Exception {
+		subscriber(0L, 20L).start();
+		for (int i = 0; i < 100 && emitter.sent.size() < 2; i++) {
+			Thread.sleep(10L);
+		}
+		assertThat(emitter.sent.size()).isGreaterThanOrEqualTo(2);
+		assertThat(emitter.sent.get(0)).isEqualTo(":\n\n");
+		for (String thread : emitter.threads) {
+			assertThat(thread).startsWith("test-stream-");
+		}
+	}
+
+	@Test
+	public void idleStreamIsClosedOffTheTimerThread() throws Exception {
+		subscriber(30L, 0L).start();
+		for (int i = 0; i < 100 && emitter.completedBy == null; i++) {
+			Thread.sleep(10L);
+		}
+		assertThat(emitter.completedBy).startsWith("test-stream-");
+	}
+
+	private ResponseBodyEmitterSubscriber<String> subscriber(long idle, long heartbeat) {
+		List<HttpMessageConverter<?>> converters = Collections
+				.<HttpMessageConverter<?>>singletonList(new StringHttpMessageConverter());
+		ResponseBodyWriter writer = new ResponseBodyWriter(emitter, converters,
+				MediaType.TEXT_PLAIN, Format.SSE, false, FlushPolicy.IMMEDIATE, timer,
+				null);
+		ResponseBodyEmitterSubscriber<String> subscriber = new ResponseBodyEmitterSubscriber<>(
+				Flux.<String>never(), emitter, writer, 32, null);
+		subscriber.setIdleTimeout(idleTimer, callbacks, idle, heartbeat);
+		return subscriber;
+	}
+
+	private static class RecordingEmitter extends ResponseBodyEmitter {
+
+		private final List<String> sent = new CopyOnWriteArrayList<>();
+
+		private final List<String> threads = new CopyOnWriteArrayList<>();
+
+		private volatile String completedBy;
+
+		@Override
+		public void send(Object object, MediaType mediaType) throws IOException {
+			threads.add(Thread.currentThread().getName());
+			sent.add(new String((byte[]) object, StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public synchronized void complete() {
+			completedBy = Thread.currentThread().getName();
+		}
+
+	}
+
+}
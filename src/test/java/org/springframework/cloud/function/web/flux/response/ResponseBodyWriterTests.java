@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.function.web.flux.response;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.cloud.function.web.flux.response.ResponseBodyWriter.Format;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class ResponseBodyWriterTests {
+
+	private ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+	private RecordingEmitter emitter = new RecordingEmitter();
+
+	@After
+	public void close() {
+		timer.shutdownNow();
+	}
+
+	@Test
+	public void immediate() throws Exception {
+		ResponseBodyWriter writer = writer(Format.PLAIN, FlushPolicy.IMMEDIATE);
+		writer.write("foo");
+		writer.write("bar");
+		assertThat(emitter.sent).containsExactly("foo", "bar");
+	}
+
+	@Test
+	public void flushedWhenBufferIsFull() throws Exception {
+		ResponseBodyWriter writer = writer(Format.PLAIN, new FlushPolicy(8, 10000L));
+		writer.write("foo");
+		assertThat(emitter.sent).isEmpty();
+		writer.write("barbaz");
+		assertThat(emitter.sent).containsExactly("foobarbaz");
+	}
+
+	@Test
+	public void flushedAfterMaxLatency() throws Exception {
+		ResponseBodyWriter writer = writer(Format.PLAIN, new FlushPolicy(8192, 50L));
+		writer.write("foo");
+		writer.write("bar");
+		assertThat(emitter.sent).isEmpty();
+		for (int i = 0; i < 100 && emitter.sent.isEmpty(); i++) {
+			Thread.sleep(10L);
+		}
+		assertThat(emitter.sent).containsExactly("foobar");
+	}
+
+	@Test
+	public void flushedOnClose() throws Exception {
+		ResponseBodyWriter writer = writer(Format.PLAIN, new FlushPolicy(8192, 10000L));
+		writer.write("foo");
+		writer.close();
+		assertThat(emitter.sent).containsExactly("foo");
+	}
+
+	@Test
+	public void serverSentEventsAreSentPreFramed() throws Exception {
+		ResponseBodyWriter writer = writer(Format.SSE, new FlushPolicy(8192, 10000L));
+		writer.write("foo");
+		writer.write("bar");
+		writer.close();
+		assertThat(emitter.sent).containsExactly("data:foo\n\ndata:bar\n\n");
+	}
+
+	@Test
+	public void objectsGoThroughTheGenerator() throws Exception {
+		ResponseBodyWriter writer = jackson(Format.JSON, false);
+		writer.write(new Foo("foo"));
+		writer.write(new Foo("bar"));
+		writer.close();
+		assertThat(emitter.sent).containsExactly("[{\"value\":\"foo\"},{\"value\":\"bar\"}]");
+	}
+
+	@Test
+	public void stringsAreQuotedAmongObjects() throws Exception {
+		ResponseBodyWriter writer = jackson(Format.JSON, false);
+		writer.write(new Foo("foo"));
+		writer.write("bar");
+		writer.close();
+		assertThat(emitter.sent).containsExactly("[{\"value\":\"foo\"},\"bar\"]");
+	}
+
+	@Test
+	public void mixedTypesGoThroughTheGenerator() throws Exception {
+		ResponseBodyWriter writer = jackson(Format.JACKSON, false);
+		Map<String, String> map = new LinkedHashMap<>();
+		map.put("key", "value");
+		writer.write(new Foo("foo"));
+		writer.write(new Bar("bar"));
+		writer.write(map);
+		writer.close();
+		assertThat(emitter.sent).containsExactly(
+				"[{\"value\":\"foo\"},{\"name\":\"bar\"},{\"key\":\"value\"}]");
+	}
+
+	@Test
+	public void singleObject() throws Exception {
+		ResponseBodyWriter writer = jackson(Format.JSON, true);
+		writer.write(new Foo("foo"));
+		writer.close();
+		assertThat(emitter.sent).containsExactly("{\"value\":\"foo\"}");
+	}
+
+	@Test
+	public void singleObjectThroughTheGenerator() throws Exception {
+		ResponseBodyWriter writer = jackson(Format.JACKSON, true);
+		writer.write(new Foo("foo"));
+		writer.close();
+		assertThat(emitter.sent).containsExactly("{\"value\":\"foo\"}");
+	}
+
+	@Test
+	public void jsonStringsArePassedThrough() throws Exception {
+		ResponseBodyWriter writer = writer(Format.JSON, FlushPolicy.IMMEDIATE);
+		writer.write("foo");
+		writer.write("{\"value\":\"bar\"}");
+		writer.close();
+		assertThat(String.join("", emitter.sent))
+				.isEqualTo("[\"foo\",{\"value\":\"bar\"}]");
+	}
+
+	@Test
+	public void ndjsonStringsAreEscapedOnRequest() throws Exception {
+		ResponseBodyWriter writer = writer(Format.NDJSON, FlushPolicy.IMMEDIATE);
+		writer.setEscapeStrings(true);
+		writer.write("say \"hi\"\n");
+		writer.close();
+		assertThat(String.join("", emitter.sent))
+				.isEqualTo("\"say \\\"hi\\\"\\n\"\n");
+	}
+
+	private ResponseBodyWriter jackson(Format format, boolean single) {
+		List<HttpMessageConverter<?>> converters = Collections
+				.<HttpMessageConverter<?>>singletonList(new StringHttpMessageConverter());
+		ResponseBodyWriter writer = new ResponseBodyWriter(emitter, converters,
+				MediaType.APPLICATION_JSON, format, single,
+				new FlushPolicy(8192, 10000L), timer, null);
+		writer.setObjectWriter(new ObjectMapper().writerFor(Foo.class), Foo.class);
+		return writer;
+	}
+
+	private ResponseBodyWriter writer(Format format, FlushPolicy policy) {
+		List<HttpMessageConverter<?>> converters = Collections
+				.<HttpMessageConverter<?>>singletonList(new StringHttpMessageConverter());
+		return new ResponseBodyWriter(emitter, converters, MediaType.TEXT_PLAIN, format,
+				false, policy, timer, null);
+	}
+
+	private static class RecordingEmitter extends ResponseBodyEmitter {
+
+		private final List<String> sent = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void send(Object object, MediaType mediaType) throws IOException {
+			sent.add(new String((byte[]) object, StandardCharsets.UTF_8));
+		}
+
+	}
+
+	static class Foo {
+
+		private final String value;
+
+		Foo(String value) {
+			this.value = value;
+		}
+
+		public String getValue() {
+			return this.value;
+		}
+
+	}
+
+	static class Bar {
+
+		private final String name;
+
+		Bar(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+	}
+
+}